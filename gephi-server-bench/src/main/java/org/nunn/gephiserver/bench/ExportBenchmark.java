@@ -0,0 +1,64 @@
+package org.nunn.gephiserver.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.gephi.project.api.Workspace;
+import org.nunn.gephiserver.server.graphing.impl.GraphExporterPDF;
+import org.nunn.gephiserver.server.graphing.impl.GraphExporterSVG;
+import org.nunn.gephiserver.server.graphing.impl.GraphLayoutStd;
+import org.nunn.gephiserver.server.system.ByteChunkOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SVG and PDF export of a laid out graph. Export does not change the workspace, so layout runs once per trial.
+ *
+ * @author Rob
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+	
+	@State(Scope.Benchmark)
+	public static class LaidOutGraph {
+		final GraphExporterSVG exporterSvg = new GraphExporterSVG();
+		final GraphExporterPDF exporterPdf = new GraphExporterPDF();
+		Workspace workspace;
+		
+		@Setup(Level.Trial)
+		public void setUp(GraphState state) throws InterruptedException {
+			workspace = state.importGraph();
+			new GraphLayoutStd().processGraph(workspace, Long.MAX_VALUE);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			GraphState.deleteWorkspace(workspace);
+		}
+	}
+	
+	@Benchmark
+	public ByteChunkOutputStream svg(LaidOutGraph laidOut) {
+		return laidOut.exporterSvg.export(laidOut.workspace);
+	}
+	
+	@Benchmark
+	public ByteArrayOutputStream pdf(LaidOutGraph laidOut) {
+		return laidOut.exporterPdf.export(laidOut.workspace);
+	}
+	
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+package org.nunn.gephiserver.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.nunn.gephiserver.server.graphing.impl.GraphArrays;
+import org.nunn.gephiserver.server.graphing.impl.ParallelForceLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The force directed stage's engine on its own: {@link ParallelForceLayout} over arrays built straight from the synthetic rows,
+ * with no Gephi workspace, import or GraphModel. Layout moves nodes, so every invocation starts from freshly scattered arrays.
+ *
+ * @author Rob
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ForceLayoutBenchmark {
+	
+	/** As GraphLayoutStd's. */
+	private static final float OPTIMAL_DISTANCE = 250f;
+	private static final int ITERATIONS = 200;
+	
+	@State(Scope.Thread)
+	public static class RowArrays {
+		/** Threads to accumulate forces across, 0 for the benchmark's own thread, as GraphLayoutStd does. */
+		@Param({"0", "4"})
+		public int threads;
+		
+		ForkJoinPool pool;
+		GraphArrays arrays;
+		GraphArrays.Csr adjacency;
+		
+		@Setup(Level.Trial)
+		public void setUpPool() {
+			pool = threads > 0 ? new ForkJoinPool(threads) : null;
+		}
+		
+		@Setup(Level.Invocation)
+		public void setUp(GraphState state) {
+			SyntheticGraph graph = state.graph;
+			int[] sources = new int[graph.edgeCount];
+			int[] targets = new int[graph.edgeCount];
+			for (int e = 0; e < graph.edgeCount; e++) {
+				// node numbers are 1 based
+				sources[e] = graph.source[e] - 1;
+				targets[e] = graph.target[e] - 1;
+			}
+			arrays = new GraphArrays(graph.nodeCount, sources, targets, graph.val);
+			adjacency = arrays.undirected();
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+	
+	@Benchmark
+	public float[] yifanHu(RowArrays rows) {
+		ParallelForceLayout layout = new ParallelForceLayout(rows.pool, rows.arrays.xs, rows.arrays.ys,
+				rows.adjacency.offsets, rows.adjacency.neighbours, OPTIMAL_DISTANCE);
+		for (int i = 0; i < ITERATIONS && layout.canAlgo(); i++) {
+			layout.goAlgo();
+		}
+		return rows.arrays.xs;
+	}
+	
+}
\ No newline at end of file
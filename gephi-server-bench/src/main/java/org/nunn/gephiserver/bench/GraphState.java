@@ -0,0 +1,88 @@
+package org.nunn.gephiserver.bench;
+
+import java.util.Collections;
+
+import org.gephi.io.importer.api.Container;
+import org.gephi.io.importer.api.ImportController;
+import org.gephi.io.processor.plugin.DefaultProcessor;
+import org.gephi.project.api.Project;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.api.Workspace;
+import org.nunn.gephiserver.server.graphing.GraphLogic;
+import org.nunn.gephiserver.server.graphing.impl.GraphLogicStd;
+import org.openide.util.Lookup;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic graph shared by a benchmark trial, served through {@link StubGraphDataSource} to {@link GraphLogicStd}.
+ *
+ * The full parameter matrix is slow at the top end; narrow it from the command line, e.g. -p edges=10000,100000
+ *
+ * @author Rob
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+	
+	public static final Integer GRAPH_ID = 1;
+	
+	private static final ProjectController PROJECT_CONTROLLER = Lookup.getDefault().lookup(ProjectController.class);
+	private static final ImportController IMPORT_CONTROLLER = Lookup.getDefault().lookup(ImportController.class);
+	
+	@Param({"100", "1000", "10000", "100000", "1000000"})
+	public int edges;
+	
+	/** Sets density: nodes = 2 * edges / averageDegree. */
+	@Param({"4", "16"})
+	public int averageDegree;
+	
+	@Param({"1", "20"})
+	public int communities;
+	
+	/** Probability of an edge leaving its community. */
+	@Param({"0.1"})
+	public double mixing;
+	
+	public SyntheticGraph graph;
+	public StubGraphDataSource graphDataSource;
+	public GraphLogic logic;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		graph = SyntheticGraph.generate(edges, averageDegree, communities, mixing, 42L);
+		graphDataSource = new StubGraphDataSource();
+		graphDataSource.putGraph(GRAPH_ID, graph);
+		logic = new GraphLogicStd(graphDataSource);
+	}
+	
+	public Container create() {
+		return logic.create(GRAPH_ID, null, Collections.<String, Object>emptyMap());
+	}
+	
+	/** @return A new workspace, not the current one, holding the graph as a render job's would after import. */
+	public Workspace importGraph() {
+		Workspace workspace;
+		synchronized (PROJECT_CONTROLLER) {
+			Project project = PROJECT_CONTROLLER.getCurrentProject();
+			if (project == null) {
+				PROJECT_CONTROLLER.newProject();
+				project = PROJECT_CONTROLLER.getCurrentProject();
+			}
+			workspace = PROJECT_CONTROLLER.newWorkspace(project);
+		}
+		IMPORT_CONTROLLER.process(create(), new DefaultProcessor(), workspace);
+		return workspace;
+	}
+	
+	public static void deleteWorkspace(Workspace workspace) {
+		if (workspace != null) {
+			synchronized (PROJECT_CONTROLLER) {
+				PROJECT_CONTROLLER.deleteWorkspace(workspace);
+			}
+		}
+	}
+	
+}
\ No newline at end of file
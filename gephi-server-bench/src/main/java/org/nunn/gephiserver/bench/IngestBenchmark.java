@@ -0,0 +1,44 @@
+package org.nunn.gephiserver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gephi.io.importer.api.Container;
+import org.gephi.project.api.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Graph loading: GraphLogicStd.create filling a Gephi container from the stub data source,
+ * then that plus import into a workspace, as a render job does before layout.
+ *
+ * @author Rob
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+	
+	@Benchmark
+	public Container create(GraphState state) {
+		return state.create();
+	}
+	
+	@Benchmark
+	public int createAndImport(GraphState state) {
+		Workspace workspace = state.importGraph();
+		try {
+			return workspace.getId();
+		}
+		finally {
+			GraphState.deleteWorkspace(workspace);
+		}
+	}
+	
+}
\ No newline at end of file
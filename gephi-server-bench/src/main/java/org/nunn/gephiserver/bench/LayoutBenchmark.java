@@ -0,0 +1,116 @@
+package org.nunn.gephiserver.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.project.api.Workspace;
+import org.nunn.gephiserver.server.graphing.impl.GraphArrays;
+import org.nunn.gephiserver.server.graphing.impl.GraphLayoutStd;
+import org.openide.util.Lookup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GraphLayoutStd.processGraph as a whole, and each of its stages on its own.
+ * Layout moves nodes, so every invocation starts from a freshly imported workspace, and stages from its arrays.
+ * See {@link ForceLayoutBenchmark} for the force stage's engine without Gephi.
+ *
+ * @author Rob
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LayoutBenchmark {
+	
+	/** Opens GraphLayoutStd's protected stages to the benchmarks. */
+	private static class StageLayout extends GraphLayoutStd {
+		private static final int FORCE_ITERATIONS = YIFAN_HU_ITERATIONS;
+		
+		@Override
+		public boolean layoutForces(GraphArrays arrays, int maxIterations, boolean refine, long stageDeadline, Map<String, Object> feedback) throws InterruptedException {
+			return super.layoutForces(arrays, maxIterations, refine, stageDeadline, feedback);
+		}
+		
+		@Override
+		public Column computeCentrality(GraphModel graphModel, GraphArrays arrays) {
+			return super.computeCentrality(graphModel, arrays);
+		}
+		
+		@Override
+		public Column computeCommunities(GraphModel graphModel) {
+			return super.computeCommunities(graphModel);
+		}
+		
+		@Override
+		public boolean adjustLabels(GraphArrays arrays, long stageDeadline, Map<String, Object> feedback) throws InterruptedException {
+			return super.adjustLabels(arrays, stageDeadline, feedback);
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class ImportedGraph {
+		private static final GraphController GRAPH_CONTROLLER = Lookup.getDefault().lookup(GraphController.class);
+		
+		final StageLayout layout = new StageLayout();
+		Workspace workspace;
+		GraphModel graphModel;
+		GraphArrays arrays;
+		
+		@Setup(Level.Invocation)
+		public void setUp(GraphState state) {
+			workspace = state.importGraph();
+			graphModel = GRAPH_CONTROLLER.getGraphModel(workspace);
+			arrays = new GraphArrays(graphModel.getGraphVisible());
+		}
+		
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			GraphState.deleteWorkspace(workspace);
+			workspace = null;
+			graphModel = null;
+			arrays = null;
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Object> processGraph(ImportedGraph imported) throws InterruptedException {
+		return imported.layout.processGraph(imported.workspace, Long.MAX_VALUE);
+	}
+	
+	@Benchmark
+	public boolean yifanHu(ImportedGraph imported) throws InterruptedException {
+		return imported.layout.layoutForces(imported.arrays, StageLayout.FORCE_ITERATIONS, false, Long.MAX_VALUE, new HashMap<>());
+	}
+	
+	@Benchmark
+	public Column graphDistance(ImportedGraph imported) {
+		return imported.layout.computeCentrality(imported.graphModel, imported.arrays);
+	}
+	
+	@Benchmark
+	public Column modularity(ImportedGraph imported) {
+		return imported.layout.computeCommunities(imported.graphModel);
+	}
+	
+	@Benchmark
+	public boolean labelAdjust(ImportedGraph imported) throws InterruptedException {
+		return imported.layout.adjustLabels(imported.arrays, Long.MAX_VALUE, new HashMap<>());
+	}
+	
+}
\ No newline at end of file
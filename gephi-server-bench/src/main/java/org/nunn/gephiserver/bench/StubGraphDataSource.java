@@ -0,0 +1,86 @@
+package org.nunn.gephiserver.bench;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nunn.gephiserver.server.graphing.GraphDataSource;
+
+/**
+ * In-memory GraphDataSource serving {@link SyntheticGraph}s, so graph logic can be benchmarked without a database.
+ * Connections are null: every method taking one is overridden here.
+ *
+ * @author Rob
+ */
+public class StubGraphDataSource extends GraphDataSource {
+	
+	private final Map<Integer, SyntheticGraph> graphs = new ConcurrentHashMap<>();
+	
+	public StubGraphDataSource() {
+		super(false);
+	}
+	
+	public void putGraph(Integer graphId, SyntheticGraph graph) {
+		graphs.put(graphId, graph);
+	}
+	
+	private SyntheticGraph graph(Integer graphId) {
+		SyntheticGraph graph = graphs.get(graphId);
+		if (graph == null) {
+			throw new IllegalArgumentException("No synthetic graph " + graphId);
+		}
+		return graph;
+	}
+	
+	@Override
+	public Connection getConnection() {
+		return null;
+	}
+	
+	@Override
+	public Map<String, Object> getGraphByID(Connection con, Integer id) {
+		Map<String, Object> result = new HashMap<>();
+		result.put("pk_id", id);
+		result.put("title", graph(id).toString());
+		result.put("creator", "bench");
+		result.put("directed", 1);
+		result.put("up_weight", 1);
+		result.put("down_weight", 1);
+		result.put("url_base", "/");
+		return result;
+	}
+	
+	@Override
+	public String getGraphVersion(Connection con, Integer id) {
+		return "synthetic|" + System.identityHashCode(graph(id));
+	}
+	
+	@Override
+	public void populateNodesForGraph(Connection con, Integer graphId, NodeComsumer consumer) {
+		SyntheticGraph graph = graph(graphId);
+		for (int i = 0; i < graph.nodeCount; i++) {
+			if ( ! consumer.push(i + 1, graph.title[i], graph.tag[i])) {
+				break;
+			}
+		}
+	}
+	
+	@Override
+	public void populateEdgesForGraph(Connection con, Integer graphId, EdgeComsumer consumer) {
+		SyntheticGraph graph = graph(graphId);
+		for (int i = 0; i < graph.edgeCount; i++) {
+			if ( ! consumer.push(i + 1, graph.source[i], graph.target[i], graph.val[i])) {
+				break;
+			}
+		}
+	}
+	
+	@Override
+	public Map<Integer, String> listGraphs(Connection con) {
+		Map<Integer, String> result = new HashMap<>();
+		graphs.forEach((id, graph) -> result.put(id, graph.toString()));
+		return result;
+	}
+	
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package org.nunn.gephiserver.bench;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Reproducible random graph with community structure, standing in for database rows.
+ *
+ * Nodes are dealt round robin into communities. Each edge joins a random source to a random target in the same
+ * community, or with probability mixing to a random target anywhere. There are no self loops or repeated edges.
+ *
+ * @author Rob
+ */
+public final class SyntheticGraph {
+	
+	public final int nodeCount;
+	public final int edgeCount;
+	/** Node numbers are 1 based, as pk_num would be; index i holds node i + 1. */
+	public final String[] title;
+	public final String[] tag;
+	/** Edge endpoints, as node numbers. */
+	public final int[] source;
+	public final int[] target;
+	public final float[] val;
+	
+	private SyntheticGraph(int nodeCount, int edgeCount) {
+		this.nodeCount = nodeCount;
+		this.edgeCount = edgeCount;
+		this.title = new String[nodeCount];
+		this.tag = new String[nodeCount];
+		this.source = new int[edgeCount];
+		this.target = new int[edgeCount];
+		this.val = new float[edgeCount];
+	}
+	
+	/** @param edges Number of edges.
+	 * @param averageDegree Average edges per node, so sets density: nodes = 2 * edges / averageDegree.
+	 * @param communities Number of communities, 1 for none.
+	 * @param mixing Probability of an edge leaving its source's community.
+	 * @param seed Random seed; equal arguments give equal graphs. */
+	public static SyntheticGraph generate(int edges, int averageDegree, int communities, double mixing, long seed) {
+		int nodes = Math.max(2, (int) (2L * edges / Math.max(1, averageDegree)));
+		communities = Math.max(1, Math.min(communities, nodes / 2));
+		// a complete graph is as dense as it gets
+		edges = (int) Math.min(edges, (long) nodes * (nodes - 1) / 2);
+		
+		SyntheticGraph graph = new SyntheticGraph(nodes, edges);
+		Random random = new Random(seed);
+		
+		for (int i = 0; i < nodes; i++) {
+			graph.title[i] = "Node " + (i + 1);
+			graph.tag[i] = "community" + (i % communities) + ",synthetic";
+		}
+		
+		int perCommunity = nodes / communities;
+		Set<Long> seen = new HashSet<>(edges * 2);
+		int e = 0;
+		while (e < edges) {
+			int s = random.nextInt(nodes);
+			int t;
+			if (communities == 1 || random.nextDouble() < mixing) {
+				t = random.nextInt(nodes);
+			}
+			else {
+				t = random.nextInt(perCommunity) * communities + (s % communities);
+			}
+			if (s == t || ! seen.add(Math.min(s, t) * (long) nodes + Math.max(s, t))) {
+				continue;
+			}
+			graph.source[e] = s + 1;
+			graph.target[e] = t + 1;
+			graph.val[e] = 1f + random.nextInt(10);
+			e++;
+		}
+		
+		return graph;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("SyntheticGraph[%d nodes, %d edges]", nodeCount, edgeCount);
+	}
+	
+}
\ No newline at end of file
@@ -38,7 +38,7 @@ public class Props {
 	
 	private static final Logger LOGGER = LogManager.getLogger(Props.class);
 	
-	private static final String APP_CONF_DIR_PROPERTY_NAME = Props.class.getPackage().getName().replace('.', '_') + "_cfg_dir";
+	public static final String APP_CONF_DIR_PROPERTY_NAME = Props.class.getPackage().getName().replace('.', '_') + "_cfg_dir";
 	private static final String APP_PROPS_DIRECTORY = "/var/" + Props.class.getPackage().getName();
 	private static final String APP_PROPS_FILE_NAME = "application.properties";
 	
@@ -2,41 +2,87 @@ package org.nunn.gephiserver.server.graphing;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nunn.gephiserver.server.Props;
 import org.nunn.gephiserver.server.graphing.impl.GraphExporterPDF;
 import org.nunn.gephiserver.server.graphing.impl.GraphExporterSVG;
+import org.nunn.gephiserver.server.graphing.impl.GraphLayoutMultilevel;
+import org.nunn.gephiserver.server.graphing.impl.GraphLayoutParallel;
 import org.nunn.gephiserver.server.graphing.impl.GraphLayoutStd;
 import org.nunn.gephiserver.server.graphing.impl.GraphLogicRootNode;
 import org.nunn.gephiserver.server.graphing.impl.GraphLogicStd;
 import org.nunn.gephiserver.server.system.ExpiringCache;
+import org.nunn.gephiserver.server.system.LruCache;
+import org.nunn.gephiserver.server.system.MetricRegistry;
 
 /**
- * Controller for running Gephi renders. Executes each job serially, queuing pending requested jobs.
+ * Controller for running Gephi renders. Executes jobs on a fixed pool of worker threads, queuing pending requested jobs.
+ * Every job renders on its own workspace, so the pool may be sized to the host's cores with the jobThreads property.
+ * With jobMode=forked, each worker thread instead hands its jobs to its own child JVM, isolating Gephi's global state
+ * and heap usage from the servlet JVM.
+ * Identical requests arriving while a matching job is queued or running share that job and its output.
+ * Completed output is kept in a render cache bounded by renderCacheBytes, keyed by the graph's version. Versions are read for
+ * lookups after coalescing, on a pool of versionThreads, so request threads never wait on the database.
+ * Local jobs are also pipelined: on submit, a pool of fetchThreads starts reading the job's graph into the graph snapshot cache,
+ * so database reads for queued jobs overlap the layout of running ones, and a job picks up its graph already in memory.
  * @author Rob
  */
 public final class GraphBuilder {
 	
 	private static final Logger LOGGER = LogManager.getLogger(GraphBuilder.class);
+	/** Cache stats that only ever increase. */
+	private static final List<String> CACHE_COUNTERS = Arrays.asList("hits", "misses", "evictions");
 	
 	private final long jobTimeout;
+	private final long longPollMaxMillis;
+	private final boolean forked;
 	private final ThreadPoolExecutor executorService;
-	private final ExpiringCache<String, Future<?>> resultCache;
+	private final ScheduledThreadPoolExecutor timeoutService;
+	private final ExecutorService completionService;
+	/** Prefetches graphs for submitted jobs, or null when disabled. */
+	private final ExecutorService fetchService;
+	/** Reads graph versions for render cache lookups, or null when the render cache is disabled. */
+	private final ExecutorService versionService;
+	private final ExpiringCache<String, InFlightJob<?>> resultCache;
+	private final ConcurrentHashMap<List<Object>, InFlightJob<?>> inFlight = new ConcurrentHashMap<>();
+	private final LruCache<List<Object>, GraphOutput<?>> renderCache;
 	private final GraphDataSource graphDataSource;
 	public final GraphLogic logicStd;
 	public final GraphLogic logicRoot;
 	public final GraphLayout layoutStd;
+	public final GraphLayout layoutParallel;
+	public final GraphLayout layoutMultilevel;
+	/** Layouts by name, for selection by request. */
+	private final Map<String, GraphLayout> layouts = new LinkedHashMap<>();
+	private final GraphLayout layoutDefault;
 	public final GraphExporterSVG exporterSvg;
 	public final GraphExporterPDF exporterPdf;
 	
@@ -44,90 +90,451 @@ public final class GraphBuilder {
 	
 	private GraphBuilder() {
 		jobTimeout = Props.INSTANCE.getPropertyAsLong("jobTimeout", 5000L);
+		longPollMaxMillis = Props.INSTANCE.getPropertyAsLong("longPollMaxMillis", 30000L);
 		
-		executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
-				new ArrayBlockingQueue<Runnable>(Props.INSTANCE.getPropertyAsInteger("jobQueueLength", 10))
+		int jobThreads = Math.max(1, Props.INSTANCE.getPropertyAsInteger("jobThreads", 1));
+		forked = "forked".equalsIgnoreCase(Props.INSTANCE.getPropertyAsString("jobMode", "local"));
+		
+		executorService = new ThreadPoolExecutor(jobThreads, jobThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Props.INSTANCE.getPropertyAsInteger("jobQueueLength", 10)),
+				new WorkerThreadFactory(forked)
 		);
 		executorService.prestartAllCoreThreads();
 		
+		timeoutService = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("Graph_Timeout_"));
+		timeoutService.setRemoveOnCancelPolicy(true);
+		
+		// Completion callbacks write HTTP responses, so run them off the render worker threads
+		completionService = Executors.newCachedThreadPool(new NamedThreadFactory("Graph_Completion_"));
+		
+		// Forked workers read graphs with their own data source, so prefetching into ours would be wasted
+		int fetchThreads = forked ? 0 : Props.INSTANCE.getPropertyAsInteger("fetchThreads", 2);
+		fetchService = fetchThreads > 0 ? Executors.newFixedThreadPool(fetchThreads, new NamedThreadFactory("Graph_Fetch_")) : null;
+		
 		resultCache = new ExpiringCache<>(
 				jobTimeout + Props.INSTANCE.getPropertyAsLong("resultDiscardMillis", 30000L),
 				(key, evictedEntry) -> {
-					boolean cancelled = evictedEntry.cancel(true);
-					executorService.purge();
+					GraphMetrics.EXPIRED.inc();
+					boolean cancelled = evictedEntry.release();
 					LOGGER.debug("Job {} expired before {}", key, (cancelled ? "completion" : "pick up"));
 				}
 		);
 		
+		long renderCacheBytes = Props.INSTANCE.getPropertyAsLong("renderCacheBytes", 64L * 1024 * 1024);
+		renderCache = renderCacheBytes > 0 ? new LruCache<>(renderCacheBytes) : null;
+		versionService = renderCache != null
+				? Executors.newFixedThreadPool(Math.max(1, Props.INSTANCE.getPropertyAsInteger("versionThreads", 2)), new NamedThreadFactory("Graph_Version_"))
+				: null;
+		
 		graphDataSource = new GraphDataSource();
 		LOGGER.debug(() -> graphDataSource.toString());
 		
 		logicStd = new GraphLogicStd(graphDataSource);
 		logicRoot = new GraphLogicRootNode(graphDataSource);
 		layoutStd = new GraphLayoutStd();
+		layoutParallel = new GraphLayoutParallel();
+		layoutMultilevel = new GraphLayoutMultilevel();
+		layouts.put("std", layoutStd);
+		layouts.put("parallel", layoutParallel);
+		layouts.put("multilevel", layoutMultilevel);
+		layoutDefault = getLayout(Props.INSTANCE.getPropertyAsString("layout", "std"));
 		exporterSvg = new GraphExporterSVG();
 		exporterPdf = new GraphExporterPDF();
 		
-		LOGGER.debug("GraphBuilder instance created");
+		registerGauges();
+		
+		LOGGER.debug("GraphBuilder instance created with {} {} worker threads", jobThreads, forked ? "forked" : "local");
 	}
 
 	public void destroy() {
 		executorService.shutdownNow();
+		timeoutService.shutdownNow();
+		completionService.shutdown();
+		if (fetchService != null) {
+			fetchService.shutdownNow();
+		}
+		if (versionService != null) {
+			versionService.shutdownNow();
+		}
+		try {
+			executorService.awaitTermination(jobTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		GraphWorkerProcess.destroyAll();
+		GraphJob.closeProject();
 		resultCache.disableExpiry();
 		graphDataSource.close();
 		graphDataSource.deregisterJdbcDrivers();
 		LOGGER.info("Destroy tasks complete.");
 	}
 	
-	private <OT> Future<GraphOutput<OT>> submit(GraphJob<OT> graphJob) {
-		Future<GraphOutput<OT>> future;
+	private void registerGauges() {
+		GraphMetrics.register();
+		MetricRegistry.INSTANCE.gauge("gephiserver_job_queue_depth", "Render jobs waiting for a worker.",
+				() -> executorService.getQueue().size());
+		MetricRegistry.INSTANCE.gauge("gephiserver_job_workers_active", "Workers currently running a render job.",
+				() -> executorService.getActiveCount());
+		MetricRegistry.INSTANCE.gauge("gephiserver_jobs_in_flight", "Distinct render jobs queued or running, after coalescing.",
+				() -> inFlight.size());
+		MetricRegistry.INSTANCE.gauge("gephiserver_async_results", "Async jobs held in the result cache, running or awaiting pick up.",
+				() -> resultCache.size());
+		registerCacheMetrics("gephiserver_render_cache", "Render cache %s.",
+				() -> getRenderCacheStats());
+		registerCacheMetrics("gephiserver_graph_snapshot_cache", "Graph snapshot cache %s, for local jobs.",
+				() -> graphDataSource.getSnapshotCacheStats());
+		registerCacheMetrics("gephiserver_statistics_cache", "Node statistics cache %s, for local jobs.",
+				() -> GraphLayoutStd.getStatisticsCacheStats());
+		MetricRegistry.INSTANCE.gauge("gephiserver_db_pool", "Database connection pool state.", "stat",
+				() -> graphDataSource.getPoolStats());
+	}
+	
+	/** Serve a cache's hits, misses and evictions as counters, name_hits_total and so on, and its entries and sizes as gauges.
+	 * @param help Format of the help text, given what is counted or measured.
+	 * @param stats Cache stats as {@link #getRenderCacheStats()}, empty while the cache is disabled, which omits its metrics. */
+	private static void registerCacheMetrics(String name, String help, Supplier<Map<String, Long>> stats) {
+		for (String counter : CACHE_COUNTERS) {
+			MetricRegistry.INSTANCE.counter(name + "_" + counter + "_total", String.format(help, counter),
+					() -> stats.get().get(counter));
+		}
+		MetricRegistry.INSTANCE.gauge(name, String.format(help, "entries and sizes"), "stat", () -> {
+			Map<String, Long> sizes = new LinkedHashMap<>(stats.get());
+			sizes.keySet().removeAll(CACHE_COUNTERS);
+			return sizes.isEmpty() ? null : sizes;
+		});
+	}
+	
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+		private final String prefix;
+		
+		private NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+		private final boolean forked;
+		
+		private WorkerThreadFactory(boolean forked) {
+			this.forked = forked;
+		}
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Runnable worker = forked ? () -> {GraphWorkerProcess.startForCurrentThread(); r.run();} : r;
+			return new Thread(worker, "Graph_Worker_" + count.incrementAndGet());
+		}
+	}
+	
+	/** Every job, sync or async, is given jobTimeout to complete: async results are discarded not long after that anyway.
+	 * The layout is passed the resulting deadline, so it can cut iterative processing short rather than be timed out. */
+	private <OT> GraphJob<OT> newJob(GraphLogic graphType, GraphLayout graphLayout, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam) {
+		long deadline = System.currentTimeMillis() + jobTimeout;
+		return forked
+				? new GraphJobForked<>(graphType, graphLayout, graphExporter, graphId, extraParam, deadline)
+				: new GraphJob<>(graphType, graphLayout, graphExporter, graphId, extraParam, deadline);
+	}
+	
+	/** Passes events to one listener, in order, on the completion pool: a slow listener, e.g. an SSE client that has stalled,
+	 * then holds up neither the render firing the events nor the job's other subscribers. */
+	private final class QueuedListener {
+		private final GraphJobListener listener;
+		private final Queue<String[]> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean draining = new AtomicBoolean();
+		
+		private QueuedListener(GraphJobListener listener) {
+			this.listener = listener;
+		}
+		
+		/** Pass on pending events, unless already doing so. */
+		private void drain() {
+			if ( ! pending.isEmpty() && draining.compareAndSet(false, true)) {
+				completionService.execute(() -> {
+					String[] event;
+					while ((event = pending.poll()) != null) {
+						try {
+							listener.onEvent(event[0], event[1]);
+						}
+						catch (RuntimeException e) {
+							LOGGER.warn("Graph job listener failed on event {}", event[0], e);
+						}
+					}
+					draining.set(false);
+					// Events queued after the last poll but before draining was cleared
+					drain();
+				});
+			}
+		}
+	}
+	
+	/** A queued or running job, shared by every request for an identical render.
+	 * Its progress events are fanned out to listeners, and replayed to those that join late.
+	 * Events are queued for listeners under the job's lock, so each listener sees them in order, but passed on outside it. */
+	private final class InFlightJob<OT> implements GraphJobListener {
+		private final List<Object> key;
+		private final FutureTask<GraphOutput<OT>> task;
+		/** Completed, on a worker thread, when the task is. */
+		private final CompletableFuture<GraphOutput<OT>> completion = new CompletableFuture<>();
+		private final List<String[]> events = new ArrayList<>();
+		private final List<QueuedListener> listeners = new ArrayList<>();
+		/** Whether the done event has been fired: the task is done a little before. */
+		private boolean finished;
+		private int subscribers = 1;
+		/** Time the job was handed to the executor, for queue wait metrics. Zero for jobs run inline. */
+		private volatile long queuedAt;
+		/** Render cache key to store successful output under, or null to not cache it. */
+		private volatile List<Object> cacheKey;
+		/** Output found in the render cache, or failure before the job could be queued: either is the result of running the task inline. */
+		private volatile GraphOutput<OT> cached;
+		private volatile Exception failure;
+		
+		private InFlightJob(List<Object> key, Callable<GraphOutput<OT>> callable, GraphExporter<OT> exporter) {
+			this.key = key;
+			this.task = new FutureTask<GraphOutput<OT>>(() -> {
+				if (failure != null) {
+					throw failure;
+				}
+				if (cached != null) {
+					return cached;
+				}
+				if (queuedAt > 0) {
+					GraphMetrics.QUEUE_WAIT.observeMillis(System.currentTimeMillis() - queuedAt);
+				}
+				return callable.call();
+			}) {
+				@Override
+				protected void done() {
+					inFlight.remove(key, InFlightJob.this);
+					if (isCancelled()) {
+						GraphMetrics.CANCELLED.inc();
+						onEvent(DONE, CANCELLED);
+						completion.completeExceptionally(new CancellationException("Job was cancelled."));
+						return;
+					}
+					try {
+						GraphOutput<OT> output = get();
+						if (output.truncated) {
+							GraphMetrics.TRUNCATED.inc();
+						}
+						else if (cacheKey != null) {
+							renderCache.put(cacheKey, output, exporter.sizeOf(output.output));
+						}
+						onEvent(DONE, OK);
+						completion.complete(output);
+					}
+					catch (ExecutionException e) {
+						if (e.getCause() instanceof CancellationException) {
+							GraphMetrics.CANCELLED.inc();
+						}
+						else if ( ! (e.getCause() instanceof RejectedExecutionException)) {
+							GraphMetrics.FAILED.inc();
+						}
+						onEvent(DONE, FAILED);
+						completion.completeExceptionally(e.getCause());
+					}
+					catch (InterruptedException e) {
+						onEvent(DONE, FAILED);
+						completion.completeExceptionally(e);
+					}
+				}
+			};
+		}
+		
+		@Override
+		public void onEvent(String event, String detail) {
+			List<QueuedListener> notify;
+			synchronized (this) {
+				String[] queued = new String[]{event, detail};
+				events.add(queued);
+				for (QueuedListener listener : listeners) {
+					listener.pending.add(queued);
+				}
+				notify = new ArrayList<>(listeners);
+				if (DONE.equals(event)) {
+					finished = true;
+					listeners.clear();
+				}
+			}
+			for (QueuedListener listener : notify) {
+				listener.drain();
+			}
+		}
+		
+		/** Replays events so far to the listener, then passes it any later ones. */
+		private void listen(GraphJobListener listener) {
+			QueuedListener queued = new QueuedListener(listener);
+			synchronized (this) {
+				queued.pending.addAll(events);
+				if ( ! finished) {
+					listeners.add(queued);
+				}
+			}
+			queued.drain();
+		}
+		
+		/** @return False if the job has already finished, or been abandoned by all its subscribers. */
+		private synchronized boolean subscribe() {
+			if (subscribers == 0 || task.isDone()) {
+				return false;
+			}
+			subscribers++;
+			return true;
+		}
+		
+		/** Drop one subscriber's interest. The job is cancelled once no subscriber is left waiting for it.
+		 * Cancelling happens outside our lock, as completion takes the in flight map's lock.
+		 * @return True if this call cancelled the job. */
+		private boolean release() {
+			synchronized (this) {
+				if (subscribers == 0 || --subscribers > 0) {
+					return false;
+				}
+			}
+			if (task.cancel(true)) {
+				executorService.purge();
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/** Queue the job, and start prefetching its graph. */
+	private <OT> void submit(InFlightJob<OT> job, GraphJob<OT> graphJob) {
 		executorService.purge();
 		try {
-			future = executorService.submit(graphJob);
+			job.queuedAt = System.currentTimeMillis();
+			executorService.execute(job.task);
 			LOGGER.debug("Job queue remaing capacity: {}", ()->{return executorService.getQueue().remainingCapacity();});
 		}
 		catch (RejectedExecutionException e) {
+			GraphMetrics.REJECTED.inc();
 			LOGGER.warn("Rejected graph job {}", graphJob.uuid);
 			throw e;
 		}
-		return future;
+		if (fetchService != null) {
+			graphDataSource.prefetchGraphSnapshot(graphJob.graphId, graphJob.getGraphVersion(), fetchService);
+		}
+		job.onEvent(GraphJobListener.QUEUED, graphJob.uuid);
 	}
 	
-	public <OT> GraphOutput<OT> doGraph(GraphLogic graphType, GraphLayout graphLayout, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam)
-			throws RejectedExecutionException, CancellationException, TimeoutException, InterruptedException, ExecutionException {
-		
-		GraphJob<OT> graphJob = new GraphJob<>(graphType, graphLayout, graphExporter, graphId, extraParam);
-		Future<GraphOutput<OT>> future = submit(graphJob);
-		GraphOutput<OT> result;
+	/** Serve the job from the render cache if the graph is unchanged since its output was cached, else queue it.
+	 * Runs on the version pool, as reading the version takes a database query. A failure, including the job queue being full,
+	 * fails the job, as there is no caller left to throw it to. */
+	@SuppressWarnings("unchecked")
+	private <OT> void lookUp(InFlightJob<OT> job, GraphJob<OT> graphJob) {
+		if (job.task.isDone()) {
+			return; // Abandoned by every subscriber while waiting for the pool
+		}
 		try {
-			result = future.get(jobTimeout, TimeUnit.MILLISECONDS);
+			String version = graphDataSource.getGraphVersion(graphJob.graphId);
+			graphJob.setGraphVersion(version);
+			List<Object> cacheKey = Arrays.asList(graphJob.key, version);
+			GraphOutput<OT> cached = (GraphOutput<OT>) renderCache.get(cacheKey);
+			if (cached != null) {
+				LOGGER.debug("Graph job {} served from render cache", graphJob.uuid);
+				job.cached = cached;
+				job.onEvent(GraphJobListener.QUEUED, graphJob.uuid);
+				job.task.run();
+				return;
+			}
+			job.cacheKey = cacheKey;
+			submit(job, graphJob);
 		}
-		catch (CancellationException | TimeoutException | InterruptedException | ExecutionException e) {
-			future.cancel(true);
-			executorService.purge();
-			LOGGER.warn("{} on sync graph job {}", e.getClass().getSimpleName(), graphJob.uuid);
-			throw e;
+		catch (SQLException | RuntimeException e) {
+			job.failure = e;
+			job.task.run();
 		}
+	}
+	
+	/** Attach to an identical job already queued or running, else start the given one: by render cache lookup if the cache is
+	 * enabled, else by queuing it.
+	 * @throws RejectedExecutionException If the job queue is full, when queued here rather than after a lookup. */
+	@SuppressWarnings("unchecked")
+	private <OT> InFlightJob<OT> submitOrAttach(GraphJob<OT> graphJob) throws RejectedExecutionException {
+		return (InFlightJob<OT>) inFlight.compute(graphJob.key, (key, existing) -> {
+			if (existing != null && existing.subscribe()) {
+				LOGGER.debug("Graph job {} coalesced with an in flight job", graphJob.uuid);
+				return existing;
+			}
+			InFlightJob<OT> job = new InFlightJob<>(graphJob.key, graphJob, graphJob.graphExporter);
+			graphJob.setListener(job);
+			if (versionService != null) {
+				versionService.execute(() -> lookUp(job, graphJob));
+			}
+			else {
+				submit(job, graphJob);
+			}
+			return job;
+		});
+	}
+	
+	/** Submit a render, or join one already running for the same request, without any thread waiting for it.
+	 * The returned future fails with TimeoutException if the render is not done within jobTimeout, releasing the caller's share of the job.
+	 * @throws RejectedExecutionException If the job queue is full. */
+	public <OT> CompletableFuture<GraphOutput<OT>> doGraphCompletable(GraphLogic graphType, GraphLayout graphLayout, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam)
+			throws RejectedExecutionException {
+		
+		GraphJob<OT> graphJob = newJob(graphType, graphLayout, graphExporter, graphId, extraParam);
+		InFlightJob<OT> job = submitOrAttach(graphJob);
+		
+		CompletableFuture<GraphOutput<OT>> result = new CompletableFuture<>();
+		ScheduledFuture<?> timeout = timeoutService.schedule(() -> {
+			if (result.completeExceptionally(new TimeoutException("Graph job " + graphJob.uuid + " timed out"))) {
+				GraphMetrics.TIMED_OUT.inc();
+				job.release();
+				LOGGER.warn("TimeoutException on sync graph job {}", graphJob.uuid);
+			}
+		}, jobTimeout, TimeUnit.MILLISECONDS);
+		
+		job.completion.whenCompleteAsync((output, failure) -> {
+			timeout.cancel(false);
+			if (failure != null) {
+				if (result.completeExceptionally(failure)) {
+					LOGGER.warn("{} on sync graph job {}", failure.getClass().getSimpleName(), graphJob.uuid);
+				}
+			}
+			else {
+				result.complete(output);
+			}
+		}, completionService);
+		
 		return result;
 	}
 	
 	public <OT> String doGraphAsync(GraphLogic graphType, GraphLayout graphLayout, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam)
 			throws RejectedExecutionException {
 		
-		GraphJob<OT> graphJobAsync = new GraphJob<>(graphType, graphLayout, graphExporter, graphId, extraParam);
-		Future<GraphOutput<OT>> future = submit(graphJobAsync);
-		resultCache.put(graphJobAsync.uuid, future);
+		GraphJob<OT> graphJobAsync = newJob(graphType, graphLayout, graphExporter, graphId, extraParam);
+		InFlightJob<OT> job = submitOrAttach(graphJobAsync);
+		resultCache.put(graphJobAsync.uuid, job);
 		return graphJobAsync.uuid;
 	}
 	
-	private boolean resultIsDone(Future<?> result) {
+	/** Throw the job's rejection from a full queue, if that is what failed it, so callers see the same as when rejected outright. */
+	private static void throwIfRejected(ExecutionException e) throws RejectedExecutionException {
+		if (e.getCause() instanceof RejectedExecutionException) {
+			throw (RejectedExecutionException) e.getCause();
+		}
+	}
+	
+	private boolean resultIsDone(InFlightJob<?> result) {
 		if (result == null) {
 			throw new CancellationException("No result found.");
 		}
-		if (result.isCancelled()) {
+		if (result.task.isCancelled()) {
 			throw new CancellationException("Job was cancelled.");
 		}
-		return result.isDone();
+		return result.task.isDone();
 	}
 	
 	public boolean isAsyncGraphRendered(String uuid) throws CancellationException {
@@ -137,17 +544,86 @@ public final class GraphBuilder {
 	@SuppressWarnings("unchecked")
 	public <OT> GraphOutput<OT> getAsyncResult(String uuid) throws CancellationException, InterruptedException, ExecutionException {
 		GraphOutput<OT> graphOutput = null;
-		Future<?> result = resultCache.get(uuid);
+		InFlightJob<?> result = resultCache.get(uuid);
 		if (resultIsDone(result)) {
 			resultCache.remove(uuid);
-			graphOutput = (GraphOutput<OT>) result.get();
+			try {
+				graphOutput = (GraphOutput<OT>) result.task.get();
+			}
+			catch (ExecutionException e) {
+				throwIfRejected(e);
+				throw e;
+			}
 		}
 		return graphOutput;
 	}
 
+	/** Long poll for an async job's result.
+	 * @param waitMillis How long to wait for the job to complete, capped by longPollMaxMillis.
+	 * @return Future of the result, which is picked up as by {@link #getAsyncResult(String)}.
+	 * Completed with null if the job is still running when the wait ends. */
+	@SuppressWarnings("unchecked")
+	public <OT> CompletableFuture<GraphOutput<OT>> awaitAsyncResult(String uuid, long waitMillis) throws CancellationException {
+		InFlightJob<OT> job = (InFlightJob<OT>) resultCache.get(uuid);
+		resultIsDone(job);
+		
+		CompletableFuture<GraphOutput<OT>> result = new CompletableFuture<>();
+		ScheduledFuture<?> wait = timeoutService.schedule(() -> {
+			result.complete(null);
+		}, Math.max(0L, Math.min(waitMillis, longPollMaxMillis)), TimeUnit.MILLISECONDS);
+		
+		job.completion.whenCompleteAsync((output, failure) -> {
+			wait.cancel(false);
+			if (failure != null) {
+				result.completeExceptionally(failure);
+			}
+			else if (result.complete(output)) {
+				resultCache.remove(uuid);
+			}
+		}, completionService);
+		
+		return result;
+	}
+	
+	/** Subscribe to an async job's progress events, replaying those already past.
+	 * The listener is called on the completion pool, one event at a time, never on the thread running the job.
+	 * @throws CancellationException If the job is unknown, or has been cancelled. */
+	public void listenAsync(String uuid, GraphJobListener listener) throws CancellationException {
+		InFlightJob<?> job = resultCache.get(uuid);
+		resultIsDone(job);
+		job.listen(listener);
+	}
+	
+	/** @return Render cache counters, or an empty map if the cache is disabled. */
+	public Map<String, Long> getRenderCacheStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		if (renderCache != null) {
+			stats.put("hits", renderCache.getHits());
+			stats.put("misses", renderCache.getMisses());
+			stats.put("evictions", renderCache.getEvictions());
+			stats.put("entries", (long) renderCache.size());
+			stats.put("bytes", renderCache.getWeight());
+			stats.put("maxBytes", renderCache.getMaxWeight());
+		}
+		return stats;
+	}
+	
+	/** @param name Name of the layout: std, parallel for large graphs, or multilevel for very large. Null or empty for the layout property's, by default std.
+	 * @throws IllegalArgumentException If no layout has the name. */
+	public GraphLayout getLayout(String name) {
+		if (name == null || name.isEmpty()) {
+			return layoutDefault;
+		}
+		GraphLayout layout = layouts.get(name);
+		if (layout == null) {
+			throw new IllegalArgumentException("Unknown layout [" + name + "], expected one of " + layouts.keySet());
+		}
+		return layout;
+	}
+	
 	public Map<Integer, String> listGraphs() {
-		try (Connection con = graphDataSource.getConnection()) {
-			return graphDataSource.listGraphs(con);
+		try {
+			return graphDataSource.listGraphs();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -155,6 +631,10 @@ public final class GraphBuilder {
 	}
 	
 	public void checkDatasource() {
+		if ( ! graphDataSource.hasDatabase()) {
+			LOGGER.info("No database configured, serving graphs from the graph store only");
+			return;
+		}
 		try (Connection con = graphDataSource.getConnection()) {
 			graphDataSource.checkSchema(con);
 			LOGGER.debug("Checked database schema: OK");
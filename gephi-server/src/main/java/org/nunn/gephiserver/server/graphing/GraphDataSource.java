@@ -1,32 +1,111 @@
 package org.nunn.gephiserver.server.graphing;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.nunn.gephiserver.server.Props;
+import org.nunn.gephiserver.server.system.BinaryCopyReader;
 import org.nunn.gephiserver.server.system.DataSource;
+import org.nunn.gephiserver.server.system.LruCache;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
 
+/**
+ * Reads graph, node and edge rows from the graph schema.
+ *
+ * Whole graphs are also served as {@link GraphSnapshot}s, cached per graph in a cache bounded by snapshotCacheBytes.
+ * A cached snapshot is served while its version matches the database's, so repeat renders of an unchanged graph
+ * only query its version: the version column of the graph's row, which triggers increment on every change to the graph's rows.
+ * {@link #checkSchema(Connection)} adds the column and triggers to a PostgreSQL schema without them. Where the column is missing,
+ * e.g. on other databases, the version is instead a checksum of the graph's rows, which costs a scan of them per lookup.
+ * Jobs pass in the version their render was keyed by, so do not query it again; otherwise snapshots whose version was
+ * checked within snapshotRecheckMillis are served without even that.
+ * Concurrent requests for a snapshot that is being read share that read, so a snapshot can be prefetched into the cache
+ * ahead of the job that needs it, see {@link #prefetchGraphSnapshot(Integer, String, Executor)}.
+ * With concurrentFetch, a snapshot's edge rows are read on a second pooled connection while its node rows are read on the first.
+ * With pgCopyFetch, node and edge rows are streamed from PostgreSQL by binary COPY rather than through a ResultSet cursor;
+ * other databases, e.g. MySQL, are always read through JDBC.
+ * With graphStoreDir, graphs written to that {@link GraphStore} are read from there instead of the database, and with
+ * graphStoreOnly no database connection pool is created at all.
+ *
+ * @author Rob
+ */
 public class GraphDataSource {
 	
+	private static final Logger LOGGER = LogManager.getLogger(GraphDataSource.class);
+	
 	private final DataSource dataSource;
+	/** Local graph files, or null if not configured. */
+	private final GraphStore graphStore;
+	
+	private static class CachedSnapshot {
+		private final GraphSnapshot snapshot;
+		/** Time its version was last found current. */
+		private volatile long checkedAt;
+		
+		private CachedSnapshot(GraphSnapshot snapshot, long checkedAt) {
+			this.snapshot = snapshot;
+			this.checkedAt = checkedAt;
+		}
+	}
+	
+	private final LruCache<Integer, CachedSnapshot> snapshotCache;
+	private final long snapshotRecheckMillis;
+	/** Reads snapshot edge rows alongside node rows, or null unless concurrentFetch. */
+	private final ExecutorService edgeFetchService;
+	/** Snapshot reads in progress, by graph. */
+	private final ConcurrentHashMap<Integer, CompletableFuture<GraphSnapshot>> snapshotReads = new ConcurrentHashMap<>();
 
 	private final String catalog;
 	private final String schema;
+	private final String catschema;
 	
 	private final String listGraphs;
 	private final String selectGraphByID;
 	private final String selectNodeByGraphID;
 	private final String selectEdgeByGraphID;
+	private final boolean copyFetch;
+	private final String copyNodeByGraphID;
+	private final String copyEdgeByGraphID;
+	private final String selectGraphVersion;
+	private final String selectGraphChecksum;
+	/** Query reading a graph's version: selectGraphVersion, or selectGraphChecksum without a version column. Null until found. */
+	private volatile String graphVersionQuery;
 	
 	public GraphDataSource() {
+		this( ! Props.INSTANCE.getPropertyAsBoolean("graphStoreOnly", false));
+	}
+	
+	/** @param withDataSource False for subclasses serving graph data from elsewhere, e.g. benchmark stubs:
+	 * no database connection pool is created, so every database backed method must be overridden. */
+	protected GraphDataSource(boolean withDataSource) {
 		this.catalog = Props.INSTANCE.getPropertyAsString("graphCatalog", (String) null);
 		
 		this.schema = Props.INSTANCE.getPropertyAsString("graphSchema", "gephi");
@@ -35,37 +114,117 @@ public class GraphDataSource {
 		}
 		
 		String catschema = this.catalog != null && ! this.catalog.isEmpty() ? this.catalog + "." + this.schema : this.schema;
+		this.catschema = catschema;
 		
 		this.listGraphs = "select pk_id, title"
 							+ " from " + catschema + ".graph";
 		this.selectGraphByID = "select pk_id, title, creator, directed, up_weight, down_weight, url_base"
 								+ " from " + catschema + ".graph"
 								+ " where pk_id = ?";
-		this.selectNodeByGraphID = "select pk_num, pk_graph, title, tag"
+		// Row consumers read these columns by index, in the order selected
+		this.selectNodeByGraphID = "select pk_num, title, tag"
 									+ " from " + catschema + ".node"
 									+ " where pk_graph = ?";
-		this.selectEdgeByGraphID = "select pk_graph, pk_num, source_node, target_node, val"
+		this.selectEdgeByGraphID = "select pk_num, source_node, target_node, val"
 									+ " from " + catschema + ".edge"
 									+ " where pk_graph = ?";
 		
-		this.dataSource = new DataSource("gephiserver." + catschema);
+		// COPY takes no bind parameters, so these are formatted with the graph's integer id
+		this.copyFetch = Props.INSTANCE.getPropertyAsBoolean("pgCopyFetch", false);
+		this.copyNodeByGraphID = "copy (select pk_num::int4, title::text, tag::text"
+									+ " from " + catschema + ".node"
+									+ " where pk_graph = %d) to stdout (format binary)";
+		this.copyEdgeByGraphID = "copy (select pk_num::int4, source_node::int4, target_node::int4, val::float4"
+									+ " from " + catschema + ".edge"
+									+ " where pk_graph = %d) to stdout (format binary)";
+		
+		// Incremented by triggers on every change to a graph's rows, so a primary key lookup tells whether it changed
+		this.selectGraphVersion = "select version"
+									+ " from " + catschema + ".graph"
+									+ " where pk_id = ?";
+		// Row counts and order independent sums of row hashes, %s the hash function; null flags tell a null from a shifted value
+		this.selectGraphChecksum = "select %1$s(concat_ws(',', g.title, g.creator, g.directed, g.up_weight, g.down_weight, g.url_base)),"
+									+ " (select count(*) from " + catschema + ".node n where n.pk_graph = g.pk_id),"
+									+ " (select coalesce(sum(%1$s(concat_ws(',', n.pk_num, n.title, n.tag, n.title is null, n.tag is null))), 0)"
+										+ " from " + catschema + ".node n where n.pk_graph = g.pk_id),"
+									+ " (select count(*) from " + catschema + ".edge e where e.pk_graph = g.pk_id),"
+									+ " (select coalesce(sum(%1$s(concat_ws(',', e.pk_num, e.source_node, e.target_node, e.val))), 0)"
+										+ " from " + catschema + ".edge e where e.pk_graph = g.pk_id)"
+									+ " from " + catschema + ".graph g"
+									+ " where g.pk_id = ?";
+		
+		long snapshotCacheBytes = Props.INSTANCE.getPropertyAsLong("snapshotCacheBytes", 64L * 1024 * 1024);
+		this.snapshotCache = snapshotCacheBytes > 0 ? new LruCache<>(snapshotCacheBytes) : null;
+		this.snapshotRecheckMillis = Props.INSTANCE.getPropertyAsLong("snapshotRecheckMillis", 0L);
+		
+		String graphStoreDir = Props.INSTANCE.getPropertyAsString("graphStoreDir", "");
+		this.graphStore = ! graphStoreDir.isEmpty() ? new GraphStore(Paths.get(graphStoreDir)) : null;
+		if (this.graphStore == null && Props.INSTANCE.getPropertyAsBoolean("graphStoreOnly", false)) {
+			throw new IllegalArgumentException("Application property [graphStoreDir] is required with [graphStoreOnly]");
+		}
+		
+		this.dataSource = withDataSource ? new DataSource("gephiserver." + catschema) : null;
+		
+		if (withDataSource && Props.INSTANCE.getPropertyAsBoolean("concurrentFetch", false)) {
+			AtomicInteger count = new AtomicInteger();
+			this.edgeFetchService = Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, "Graph_Edge_Fetch_" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		else {
+			this.edgeFetchService = null;
+		}
 	}
 	
 	public Connection getConnection() throws SQLException {
+		if (dataSource == null) {
+			throw new SQLException("No database connection pool, graphs are served from the graph store only");
+		}
 		return dataSource.getConnection();
 	}
 	
+	/** @return False when graphs are served from the graph store only. */
+	public boolean hasDatabase() {
+		return dataSource != null;
+	}
+	
 	public void close() {
-		dataSource.close();
+		if (edgeFetchService != null) {
+			edgeFetchService.shutdownNow();
+		}
+		if (dataSource != null) {
+			dataSource.close();
+		}
 	}
 
 	public void deregisterJdbcDrivers() {
-		dataSource.deregisterJdbcDrivers();
+		if (dataSource != null) {
+			dataSource.deregisterJdbcDrivers();
+		}
+	}
+	
+	public Map<String, Integer> getPoolStats() {
+		return dataSource != null ? dataSource.getPoolStats() : null;
+	}
+	
+	public Map<String, Long> getSnapshotCacheStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		if (snapshotCache != null) {
+			stats.put("hits", snapshotCache.getHits());
+			stats.put("misses", snapshotCache.getMisses());
+			stats.put("evictions", snapshotCache.getEvictions());
+			stats.put("entries", (long) snapshotCache.size());
+			stats.put("bytes", snapshotCache.getWeight());
+			stats.put("maxBytes", snapshotCache.getMaxWeight());
+		}
+		return stats;
 	}
 	
 	@Override
 	public String toString() {
-		return dataSource.toString();
+		return dataSource != null ? dataSource.toString() : getClass().getSimpleName();
 	}
 	
 	public void checkSchema(Connection con) throws SQLException {
@@ -99,6 +258,87 @@ public class GraphDataSource {
 		if ( ! gephiTableNames.containsAll(Arrays.asList("graph", "node", "edge"))) {
 			throw new RuntimeException("Tables missing from " + schema + " schema!");
 		}
+		
+		if ( ! hasVersionColumn(dbmd) && isPostgreSQL(dbmd)) {
+			addVersionColumn(con);
+		}
+		graphVersionQuery = graphVersionQuery(con);
+	}
+	
+	/** Add the version column, and the triggers incrementing it, to a schema created before them, as schema.sql does.
+	 * Run in one transaction, so a failure, e.g. for lack of privileges or on PostgreSQL before 10, leaves the schema as it was. */
+	private void addVersionColumn(Connection con) throws SQLException {
+		boolean autoCommit = con.getAutoCommit();
+		con.setAutoCommit(false);
+		try (Statement statement = con.createStatement()) {
+			for (String sql : versionMigration()) {
+				statement.execute(sql);
+			}
+			con.commit();
+			LOGGER.info("Added column graph.version and its triggers to {} schema", schema);
+		}
+		catch (SQLException e) {
+			con.rollback();
+			// Another server may have added it meanwhile; if not, versions are checksums of the rows
+			LOGGER.warn("Could not add column graph.version to {} schema", schema, e);
+		}
+		finally {
+			con.setAutoCommit(autoCommit);
+		}
+	}
+	
+	/** @return Statements adding the version column and its triggers: one per statement on node and edge rows, incrementing
+	 * the version of every graph whose rows the statement changed, and one on graph rows, incrementing it on any other update. */
+	private List<String> versionMigration() {
+		List<String> sql = new ArrayList<>();
+		sql.add("alter table " + catschema + ".graph add column version bigint not null default 0");
+		sql.add("create or replace function " + catschema + ".bump_graph_version() returns trigger as $$"
+				+ " begin"
+				+ " if tg_op = 'INSERT' then"
+				+ " update " + catschema + ".graph set version = version + 1 where pk_id in (select pk_graph from new_rows);"
+				+ " elsif tg_op = 'DELETE' then"
+				+ " update " + catschema + ".graph set version = version + 1 where pk_id in (select pk_graph from old_rows);"
+				+ " else"
+				+ " update " + catschema + ".graph set version = version + 1"
+				+ " where pk_id in (select pk_graph from new_rows union select pk_graph from old_rows);"
+				+ " end if;"
+				+ " return null;"
+				+ " end $$ language plpgsql");
+		sql.add("create or replace function " + catschema + ".bump_graph_row_version() returns trigger as $$"
+				+ " begin new.version := old.version + 1; return new; end $$ language plpgsql");
+		for (String table : Arrays.asList("node", "edge")) {
+			sql.add(versionTrigger(table, "insert", "new table as new_rows"));
+			sql.add(versionTrigger(table, "update", "old table as old_rows new table as new_rows"));
+			sql.add(versionTrigger(table, "delete", "old table as old_rows"));
+		}
+		sql.add("create trigger graph_version before update on " + catschema + ".graph"
+				+ " for each row when (new.version = old.version) execute procedure " + catschema + ".bump_graph_row_version()");
+		return sql;
+	}
+	
+	private String versionTrigger(String table, String event, String transitionTables) {
+		return "create trigger " + table + "_version_" + event + " after " + event + " on " + catschema + "." + table
+				+ " referencing " + transitionTables + " for each statement execute procedure " + catschema + ".bump_graph_version()";
+	}
+	
+	private boolean hasVersionColumn(DatabaseMetaData dbmd) throws SQLException {
+		try (ResultSet rs = dbmd.getColumns(catalog, schema, "graph", "version")) {
+			return rs.next();
+		}
+	}
+	
+	private static boolean isPostgreSQL(DatabaseMetaData dbmd) throws SQLException {
+		return "PostgreSQL".equals(dbmd.getDatabaseProductName());
+	}
+	
+	/** @return selectGraphVersion if the graph table has a version column, else selectGraphChecksum for the database's hash function. */
+	private String graphVersionQuery(Connection con) throws SQLException {
+		DatabaseMetaData dbmd = con.getMetaData();
+		if (hasVersionColumn(dbmd)) {
+			return selectGraphVersion;
+		}
+		LOGGER.warn("Column graph.version missing from {} schema: graph versions are checksums of their rows", schema);
+		return String.format(selectGraphChecksum, isPostgreSQL(dbmd) ? "hashtext" : "crc32");
 	}
 
 	public Map<String, Object> getGraphByID(Connection con, Integer id) throws SQLException {
@@ -112,58 +352,349 @@ public class GraphDataSource {
 		return result;
 	}
 	
+	/** @return Version of the graph's graph, node and edge rows, which changes when the rendered graph would. Empty if there is no graph. */
+	public String getGraphVersion(Connection con, Integer id) throws SQLException {
+		String query = graphVersionQuery;
+		if (query == null) {
+			graphVersionQuery = query = graphVersionQuery(con);
+		}
+		try (PreparedStatement ps = con.prepareStatement(query)) {
+			ps.setInt(1, id);
+			try (ResultSet rs = ps.executeQuery()) {
+				if ( ! rs.next()) {
+					return "";
+				}
+				StringJoiner version = new StringJoiner(":");
+				for (int i = 1, columns = rs.getMetaData().getColumnCount(); i <= columns; i++) {
+					version.add(rs.getString(i));
+				}
+				return version.toString();
+			}
+		}
+	}
+	
+	/** Snapshot of the graph's rows, from the snapshot cache if still current, else read with a pooled connection and cached.
+	 * The version is read before the rows, so a change made while reading leaves the snapshot looking stale, not current.
+	 * @param version Version of the graph already read, see {@link #getGraphVersion(Integer)}, or null to read it here if need be. */
+	public GraphSnapshot getGraphSnapshot(Integer graphId, String version) throws SQLException {
+		CachedSnapshot cached = snapshotCache != null ? snapshotCache.get(graphId) : null;
+		long now = System.currentTimeMillis();
+		if (cached != null && (version != null ? version.equals(cached.snapshot.getVersion()) : now - cached.checkedAt < snapshotRecheckMillis)) {
+			return cached.snapshot;
+		}
+		
+		CompletableFuture<GraphSnapshot> read = new CompletableFuture<>();
+		CompletableFuture<GraphSnapshot> inProgress;
+		while ((inProgress = snapshotReads.putIfAbsent(graphId, read)) != null) {
+			GraphSnapshot shared = await(inProgress);
+			// A read begun before our version was written may predate it: then wait for our own
+			if (version == null || version.equals(shared.getVersion())) {
+				return shared;
+			}
+		}
+		GraphSnapshot snapshot;
+		try {
+			snapshot = readGraphSnapshot(graphId, cached, version, now);
+		}
+		catch (SQLException | RuntimeException e) {
+			read.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			// On success, removed before completing, so a waiter finding the snapshot stale does not find the read again
+			snapshotReads.remove(graphId, read);
+		}
+		read.complete(snapshot);
+		return snapshot;
+	}
+	
+	/** Wait for a read on another thread, rethrowing its failure.
+	 * Interruption, e.g. by job cancellation, stops the wait but leaves the read running for any others waiting. */
+	private static <T> T await(Future<T> read) throws SQLException {
+		try {
+			return read.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted waiting for graph rows");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/** Read the graph's snapshot into the snapshot cache, on the given executor, so a job that will need it later finds it ready.
+	 * Does nothing when the snapshot cache is disabled, as there would be nowhere to keep it.
+	 * @param version As for {@link #getGraphSnapshot(Integer, String)}. */
+	public void prefetchGraphSnapshot(Integer graphId, String version, Executor executor) {
+		if (snapshotCache == null) {
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				getGraphSnapshot(graphId, version);
+			}
+			catch (Exception e) {
+				// The job reads again, and fails with this, if it persists
+				LOGGER.warn("Prefetch of graph {} failed", graphId, e);
+			}
+		});
+	}
+	
+	/** @param cached Currently cached snapshot, served if its version is still current.
+	 * @param version Version already read, which database rows are read as without querying it again: it was read before them,
+	 * so at worst the snapshot is newer than its version says, and is read again by the next job. Null to read it. */
+	private GraphSnapshot readGraphSnapshot(Integer graphId, CachedSnapshot cached, String version, long now) throws SQLException {
+		GraphSnapshot snapshot;
+		if (isStored(graphId)) {
+			try {
+				String storedVersion = graphStore.readVersion(graphId);
+				if (cached != null && cached.snapshot.getVersion().equals(storedVersion)) {
+					cached.checkedAt = now;
+					return cached.snapshot;
+				}
+				snapshot = graphStore.read(graphId);
+				GraphMetrics.stage("fetch_store", now);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not read stored graph " + graphId, e);
+			}
+		}
+		else {
+			try (Connection con = getConnection()) {
+				if (version == null) {
+					version = getGraphVersion(con, graphId);
+					if (cached != null && cached.snapshot.getVersion().equals(version)) {
+						cached.checkedAt = now;
+						return cached.snapshot;
+					}
+				}
+				snapshot = readDatabaseSnapshot(con, graphId, version);
+			}
+		}
+		
+		if (snapshotCache != null) {
+			snapshotCache.put(graphId, new CachedSnapshot(snapshot, now), snapshot.sizeOf());
+		}
+		return snapshot;
+	}
+	
+	private GraphSnapshot readDatabaseSnapshot(Connection con, Integer graphId, String version) throws SQLException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder(version, getGraphByID(con, graphId));
+		// Only fetch concurrently given a spare connection: waiting for one while holding ours could exhaust the pool
+		if (edgeFetchService != null && dataSource.hasIdleConnection()) {
+			// The builder's node and edge columns are separate, so the two reads can fill it at once
+			Future<Void> edges = edgeFetchService.submit(() -> {
+				try (Connection edgeCon = getConnection()) {
+					populateEdgesForGraph(edgeCon, graphId, builder);
+				}
+				return null;
+			});
+			try {
+				populateNodesForGraph(con, graphId, builder);
+			}
+			catch (SQLException | RuntimeException e) {
+				// The node read's failure is the one reported: stop the edge read, keeping any failure it had already as suppressed
+				if ( ! edges.cancel(true)) {
+					try {
+						await(edges);
+					}
+					catch (SQLException | RuntimeException edgeFailure) {
+						e.addSuppressed(edgeFailure);
+					}
+				}
+				throw e;
+			}
+			try {
+				await(edges);
+			}
+			catch (CancellationException e) {
+				edges.cancel(true);
+				throw e;
+			}
+		}
+		else {
+			populateNodesForGraph(con, graphId, builder);
+			populateEdgesForGraph(con, graphId, builder);
+		}
+		return builder.build();
+	}
+	
+	private boolean isStored(Integer graphId) {
+		return graphStore != null && graphStore.contains(graphId);
+	}
+	
+	/** Read the graph from the database and write it to the graph store, replacing any stored copy.
+	 * Renders then read the stored copy, until it is rewritten or deleted. */
+	public GraphSnapshot storeGraph(Integer graphId) throws SQLException, IOException {
+		if (graphStore == null) {
+			throw new IllegalStateException("Application property [graphStoreDir] is not set");
+		}
+		try (Connection con = getConnection()) {
+			GraphSnapshot snapshot = readDatabaseSnapshot(con, graphId, getGraphVersion(con, graphId));
+			if (snapshot.getGraph().isEmpty()) {
+				throw new IllegalArgumentException("No graph " + graphId);
+			}
+			graphStore.write(graphId, snapshot);
+			return snapshot;
+		}
+	}
+	
+	/** @return Version of the graph as rendered: that of its stored copy if it has one, else as read from the database. */
+	public String getGraphVersion(Integer graphId) throws SQLException {
+		if (isStored(graphId)) {
+			try {
+				return graphStore.readVersion(graphId);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not read stored graph " + graphId, e);
+			}
+		}
+		try (Connection con = getConnection()) {
+			return getGraphVersion(con, graphId);
+		}
+	}
+	
+	/** @return Titles by graph id of graphs in the database and the graph store. */
+	public Map<Integer, String> listGraphs() throws SQLException {
+		Map<Integer, String> result = new HashMap<>();
+		if (graphStore != null) {
+			try {
+				result.putAll(graphStore.listGraphs());
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not list graph store", e);
+			}
+		}
+		if (hasDatabase()) {
+			try (Connection con = getConnection()) {
+				result.putAll(listGraphs(con));
+			}
+		}
+		return result;
+	}
+	
+	/** Receives node rows as read, unboxed. */
 	@FunctionalInterface
 	public static interface NodeComsumer { 
-		public boolean push(Integer num, String name, String tag);
+		public boolean push(int num, String name, String tag);
 	}
 	
 	public void populateNodesForGraph(Connection con, Integer graphId, NodeComsumer consumer) throws SQLException {
+		if (isCopyFetch(con)) {
+			long startedTime = System.currentTimeMillis();
+			try (BinaryCopyReader rows = copyOut(con, String.format(copyNodeByGraphID, graphId))) {
+				while (rows.nextRow()) {
+					if ( ! consumer.push(rows.readInt(), rows.readString(), rows.readString())) {
+						break;
+					}
+				}
+			}
+			catch (IOException e) {
+				throw new SQLException("Binary COPY of nodes failed", e);
+			}
+			GraphMetrics.stage("fetch_nodes", startedTime);
+			return;
+		}
+		
+		// Cursor fetching needs a transaction, e.g. on PostgreSQL: only toggle autocommit when that means a change
 		boolean originalAutoCommit = con.getAutoCommit();
-		con.setAutoCommit(false);
+		if (originalAutoCommit) {
+			con.setAutoCommit(false);
+		}
 		
+		long startedTime = System.currentTimeMillis();
 		try (PreparedStatement ps = con.prepareStatement(selectNodeByGraphID)) {
 			ps.setInt(1, graphId);
 			ps.setFetchSize(dataSource.getCursorFetchSize());
 			
 			try (ResultSet rs = ps.executeQuery()) {
 				while (rs.next()) {
-					if ( ! consumer.push(rs.getInt("pk_num"), rs.getString("title"), rs.getString("tag"))) {
+					if ( ! consumer.push(rs.getInt(1), rs.getString(2), rs.getString(3))) {
 						break;
 					}
 				}
 			}
+			GraphMetrics.stage("fetch_nodes", startedTime);
 		}
 		finally {
-			con.setAutoCommit(originalAutoCommit);
+			if (originalAutoCommit) {
+				con.setAutoCommit(true);
+			}
 		}
 	}
 	
+	/** Receives edge rows as read, unboxed. */
 	@FunctionalInterface
 	public static interface EdgeComsumer { 
-		public boolean push(Integer num, Integer source, Integer target, Float val);
+		public boolean push(int num, int source, int target, float val);
 	}
 	
 	public void populateEdgesForGraph(Connection con, Integer graphId, EdgeComsumer consumer) throws SQLException {
+		if (isCopyFetch(con)) {
+			long startedTime = System.currentTimeMillis();
+			try (BinaryCopyReader rows = copyOut(con, String.format(copyEdgeByGraphID, graphId))) {
+				while (rows.nextRow()) {
+					if ( ! consumer.push(rows.readInt(), rows.readInt(), rows.readInt(), rows.readFloat())) {
+						break;
+					}
+				}
+			}
+			catch (IOException e) {
+				throw new SQLException("Binary COPY of edges failed", e);
+			}
+			GraphMetrics.stage("fetch_edges", startedTime);
+			return;
+		}
+		
 		boolean originalAutoCommit = con.getAutoCommit();
-		con.setAutoCommit(false);
+		if (originalAutoCommit) {
+			con.setAutoCommit(false);
+		}
 		
+		long startedTime = System.currentTimeMillis();
 		try (PreparedStatement ps = con.prepareStatement(selectEdgeByGraphID)) {
 			ps.setInt(1, graphId);
 			ps.setFetchSize(dataSource.getCursorFetchSize());
 			
 			try (ResultSet rs = ps.executeQuery()) {
 				while (rs.next()) {
-					if ( ! consumer.push(rs.getInt("pk_num"), rs.getInt("source_node"), rs.getInt("target_node"), rs.getFloat("val"))) {
+					if ( ! consumer.push(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getFloat(4))) {
 						break;
 					}
 				}
 			}
+			GraphMetrics.stage("fetch_edges", startedTime);
 		}
 		finally {
-			con.setAutoCommit(originalAutoCommit);
+			if (originalAutoCommit) {
+				con.setAutoCommit(true);
+			}
 		}
 	}
 
+	private boolean isCopyFetch(Connection con) throws SQLException {
+		return copyFetch && con.isWrapperFor(PGConnection.class);
+	}
+	
+	/** Start a binary COPY out. Closing the reader before the end of the data cancels the copy, freeing the connection. */
+	private static BinaryCopyReader copyOut(Connection con, String copySql) throws SQLException, IOException {
+		PGCopyInputStream copyIn = new PGCopyInputStream(con.unwrap(PGConnection.class), copySql);
+		try {
+			return new BinaryCopyReader(copyIn);
+		}
+		catch (IOException | RuntimeException e) {
+			copyIn.close();
+			throw e;
+		}
+	}
+	
 	public Map<Integer, String> listGraphs(Connection con) throws SQLException {
 		Map<Integer, String> result = new HashMap<>();
 		try (PreparedStatement ps = con.prepareStatement(listGraphs)) {
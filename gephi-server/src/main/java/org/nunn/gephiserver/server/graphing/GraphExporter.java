@@ -1,12 +1,46 @@
 package org.nunn.gephiserver.server.graphing;
 
 import org.gephi.io.exporter.api.ExportController;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.preview.api.PreviewModel;
+import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.spi.Renderer;
+import org.gephi.project.api.Workspace;
 import org.openide.util.Lookup;
 
 public interface GraphExporter<OT> {
 	
 	static final ExportController EXPORT_CONTROLLER = Lookup.getDefault().lookup(ExportController.class);
+	static final PreviewController PREVIEW_CONTROLLER = Lookup.getDefault().lookup(PreviewController.class);
 	
-	OT export();
+	/** @param workspace The job's own workspace to export from. */
+	OT export(Workspace workspace);
+	
+	/** Serialise exported output, e.g. for transfer from a forked worker process. */
+	byte[] toBytes(OT output);
+	
+	/** Inverse of {@link #toBytes(Object)}. */
+	OT fromBytes(byte[] bytes);
+	
+	/** @return Approximate heap bytes held by exported output, for bounding caches. */
+	long sizeOf(OT output);
+	
+	/** Build the workspace's preview items, ready to render.
+	 * Gephi's refreshPreview(Workspace) preprocesses the new items with the current workspace's preview model, not the given one,
+	 * and job workspaces are never current. Gephi's preview exporters refresh internally, so exporters render through this instead.
+	 * @return The workspace's preview model. */
+	static PreviewModel refreshPreview(Workspace workspace) {
+		PreviewModel previewModel = PREVIEW_CONTROLLER.getModel(workspace);
+		previewModel.getProperties().putValue(PreviewProperty.VISIBILITY_RATIO, 1.0);
+		
+		// Renderers are shared, so preprocess under the same lock as Gephi's own refresh
+		synchronized (PREVIEW_CONTROLLER) {
+			PREVIEW_CONTROLLER.refreshPreview(workspace);
+			for (Renderer renderer : previewModel.getManagedEnabledRenderers()) {
+				renderer.preProcess(previewModel);
+			}
+		}
+		return previewModel;
+	}
 	
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package org.nunn.gephiserver.server.graphing;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -9,35 +12,63 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.gephi.io.importer.api.Container;
 import org.gephi.io.importer.api.ImportController;
-import org.gephi.io.processor.spi.Processor;
+import org.gephi.io.processor.plugin.DefaultProcessor;
+import org.gephi.project.api.Project;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.api.Workspace;
 import org.openide.util.Lookup;
 
-/** Entry in rendering work queue */
+/** Entry in rendering work queue.
+ * Each job is rendered on a workspace owned by the worker thread running it, never the Gephi current workspace. */
 public class GraphJob<OT> implements Callable<GraphOutput<OT>> {
 	
 	private static final Logger LOGGER = LogManager.getLogger(GraphJob.class);
 	
 	protected static final ProjectController PROJECT_CONTROLLER = Lookup.getDefault().lookup(ProjectController.class);
 	protected static final ImportController IMPORT_CONTROLLER = Lookup.getDefault().lookup(ImportController.class);
-	protected static final Processor DEFAULT_PROCESSOR = Lookup.getDefault().lookup(Processor.class);
 	
-	private final GraphLogic logicImpl;
-	private final GraphLayout layoutImpl;
-	private final GraphExporter<OT> graphExporter;
-	private final Integer graphId;
-	private final Map<String, Object> extraParam;
+	protected final GraphLogic logicImpl;
+	protected final GraphLayout layoutImpl;
+	protected final GraphExporter<OT> graphExporter;
+	protected final Integer graphId;
+	protected final Map<String, Object> extraParam;
+	/** Epoch millis by which the job should be done, Long.MAX_VALUE for none. Passed to the layout. */
+	protected final long deadline;
 
 	public final String uuid;
+	/** Identity of the render this job produces: equal keys give identical output. */
+	public final List<Object> key;
 	
-	public GraphJob(GraphLogic logicImpl, GraphLayout layoutImpl, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam) {
+	private volatile GraphJobListener listener = (event, detail) -> {};
+	/** Version of the graph, if read before the job runs, so graph logic need not read it again. */
+	private volatile String graphVersion;
+	
+	public GraphJob(GraphLogic logicImpl, GraphLayout layoutImpl, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam, long deadline) {
 		this.logicImpl = logicImpl;
 		this.layoutImpl = layoutImpl;
 		this.graphExporter = graphExporter;
 		this.graphId = graphId;
 		this.extraParam = extraParam;
+		this.deadline = deadline;
 		this.uuid = UUID.randomUUID().toString();
+		this.key = Arrays.asList(logicImpl, layoutImpl, graphExporter, graphId, extraParam);
+	}
+
+	/** @param listener Receives the job's started and stage events. */
+	void setListener(GraphJobListener listener) {
+		this.listener = listener;
+	}
+	
+	void setGraphVersion(String graphVersion) {
+		this.graphVersion = graphVersion;
+	}
+	
+	String getGraphVersion() {
+		return graphVersion;
+	}
+	
+	protected void fireEvent(String event, String detail) {
+		listener.onEvent(event, detail);
 	}
 
 	/** Populate our node and edge data into Gephi Container, import to GraphModel, then export to final format. */
@@ -46,30 +77,44 @@ public class GraphJob<OT> implements Callable<GraphOutput<OT>> {
 		long startedTime = System.currentTimeMillis();
 		
 		GraphOutput<OT> result;
+		Workspace ws = null;
 		
 		try {
 			LOGGER.debug("Starting Gephi job");
+			fireEvent(GraphJobListener.STARTED, uuid);
 			
-			PROJECT_CONTROLLER.newProject();
-			Workspace ws = PROJECT_CONTROLLER.getCurrentWorkspace();
+			ws = newWorkspace();
 			
-			Container container = logicImpl.create(graphId, extraParam);
+			fireEvent(GraphJobListener.STAGE, "load");
+			long stageStarted = System.currentTimeMillis();
+			Container container = logicImpl.create(graphId, graphVersion, extraParam);
+			GraphMetrics.stage("load", stageStarted);
 			
 			checkInterrupted("before import controller processing");
 			
-			IMPORT_CONTROLLER.process(container, DEFAULT_PROCESSOR, ws);
+			// The looked up Processor is a shared singleton holding container and workspace state, so use our own
+			fireEvent(GraphJobListener.STAGE, "import");
+			stageStarted = System.currentTimeMillis();
+			IMPORT_CONTROLLER.process(container, new DefaultProcessor(), ws);
+			GraphMetrics.stage("import", stageStarted);
 
 			checkInterrupted("before layout processing");
 			
-			layoutImpl.processGraph();
+			fireEvent(GraphJobListener.STAGE, "layout");
+			stageStarted = System.currentTimeMillis();
+			Map<String, Object> feedback = layoutImpl.processGraph(ws, deadline, layoutKey());
+			GraphMetrics.stage("layout", stageStarted);
 
 			checkInterrupted("before export");
 			
-			OT output = graphExporter.export();
+			fireEvent(GraphJobListener.STAGE, "export");
+			stageStarted = System.currentTimeMillis();
+			OT output = graphExporter.export(ws);
+			GraphMetrics.stage("export", stageStarted);
 
 			checkInterrupted("before return");
 			
-			result = new GraphOutput<>(output);
+			result = new GraphOutput<>(output, Boolean.TRUE.equals(feedback.get(GraphLayout.TRUNCATED)));
 		}
 		catch (InterruptedException e) {
 			LOGGER.debug("Graph job interrupted: {}", e.getMessage());
@@ -77,23 +122,59 @@ public class GraphJob<OT> implements Callable<GraphOutput<OT>> {
 		}
 		finally {
 			try {
-				PROJECT_CONTROLLER.closeCurrentWorkspace();
-				PROJECT_CONTROLLER.closeCurrentProject();
+				deleteWorkspace(ws);
 			}
 			catch (Exception e) {
 				LOGGER.warn("Workspace cleanup failed", e);
 			}
 			
+			GraphMetrics.JOB.observeMillis(System.currentTimeMillis() - startedTime);
 			LOGGER.info("Graph job {} ran for {} msec", uuid, System.currentTimeMillis() - startedTime);
 		}
 		
 		return result;
 	}
 	
+	/** @return Identity of the graph rendered for the layout, whatever its version: graph logic, id and parameters, but not the exporter. */
+	protected String layoutKey() {
+		return logicImpl.getClass().getName() + ":" + graphId + ":" + (extraParam != null ? new TreeMap<>(extraParam) : "{}");
+	}
+	
 	private void checkInterrupted(String msg) throws InterruptedException {
 		if (Thread.interrupted()) {
 			throw new InterruptedException(msg);
 		}
 	}
 	
+	/** Gephi's project controller is not thread safe, so workspace creation and deletion are serialised on it.
+	 * All job workspaces live in one shared project, created on first use.
+	 * @return A new workspace, not opened as the current workspace. */
+	private static Workspace newWorkspace() {
+		synchronized (PROJECT_CONTROLLER) {
+			Project project = PROJECT_CONTROLLER.getCurrentProject();
+			if (project == null) {
+				PROJECT_CONTROLLER.newProject();
+				project = PROJECT_CONTROLLER.getCurrentProject();
+			}
+			return PROJECT_CONTROLLER.newWorkspace(project);
+		}
+	}
+
+	private static void deleteWorkspace(Workspace ws) {
+		if (ws != null) {
+			synchronized (PROJECT_CONTROLLER) {
+				PROJECT_CONTROLLER.deleteWorkspace(ws);
+			}
+		}
+	}
+
+	/** Close the shared project holding job workspaces. */
+	static void closeProject() {
+		synchronized (PROJECT_CONTROLLER) {
+			if (PROJECT_CONTROLLER.getCurrentProject() != null) {
+				PROJECT_CONTROLLER.closeCurrentProject();
+			}
+		}
+	}
+
 }
\ No newline at end of file
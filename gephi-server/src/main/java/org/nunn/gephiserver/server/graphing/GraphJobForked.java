@@ -0,0 +1,40 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/** Entry in rendering work queue that is rendered out of process, by the worker JVM owned by the executing thread. */
+public class GraphJobForked<OT> extends GraphJob<OT> {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphJobForked.class);
+
+	public GraphJobForked(GraphLogic logicImpl, GraphLayout layoutImpl, GraphExporter<OT> graphExporter, Integer graphId, Map<String, Object> extraParam, long deadline) {
+		super(logicImpl, layoutImpl, graphExporter, graphId, extraParam, deadline);
+	}
+
+	@Override
+	public GraphOutput<OT> call() throws CancellationException {
+		long startedTime = System.currentTimeMillis();
+
+		try {
+			fireEvent(GraphJobListener.STARTED, uuid);
+			fireEvent(GraphJobListener.STAGE, "forked");
+			GraphWorkerMessage.Request request = new GraphWorkerMessage.Request(uuid, logicImpl, layoutImpl, graphExporter, graphId, getGraphVersion(), extraParam, deadline);
+			GraphWorkerMessage.Response response = GraphWorkerProcess.forCurrentThread().render(request);
+			GraphMetrics.replay(response.stageMillis);
+			return new GraphOutput<>(graphExporter.fromBytes(response.output), response.truncated);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Could not start forked graph worker", e);
+		}
+		finally {
+			GraphMetrics.JOB.observeMillis(System.currentTimeMillis() - startedTime);
+			LOGGER.info("Forked graph job {} ran for {} msec", uuid, System.currentTimeMillis() - startedTime);
+		}
+	}
+
+}
\ No newline at end of file
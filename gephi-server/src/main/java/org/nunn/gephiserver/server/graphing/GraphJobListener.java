@@ -0,0 +1,29 @@
+package org.nunn.gephiserver.server.graphing;
+
+/**
+ * Receives progress events of a graph job.
+ *
+ * Listeners subscribed with {@link GraphBuilder#listenAsync(String, GraphJobListener)}, e.g. SSE and long-poll clients, are called
+ * on GraphBuilder's completion pool, never on the thread running the job. Calls to one listener are serialised, in event order,
+ * so it needs no locking of its own, but a slow listener delays its own later events. Only the job's own listener, set by
+ * GraphBuilder to queue events for subscribers, is called on the thread running the job.
+ */
+@FunctionalInterface
+public interface GraphJobListener {
+	
+	/** Job accepted into the work queue */
+	static final String QUEUED = "queued";
+	/** Job picked up by a worker */
+	static final String STARTED = "started";
+	/** Job entered a processing stage, named by the event detail */
+	static final String STAGE = "stage";
+	/** Job finished; the event detail is one of {@link #OK}, {@link #FAILED} or {@link #CANCELLED} */
+	static final String DONE = "done";
+	
+	static final String OK = "ok";
+	static final String FAILED = "failed";
+	static final String CANCELLED = "cancelled";
+	
+	void onEvent(String event, String detail);
+	
+}
\ No newline at end of file
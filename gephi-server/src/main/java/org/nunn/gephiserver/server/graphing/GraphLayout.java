@@ -2,11 +2,26 @@ package org.nunn.gephiserver.server.graphing;
 
 import java.util.Map;
 
+import org.gephi.project.api.Workspace;
+
 public interface GraphLayout {
 	
-	/** Layout Gephi graph data set. Graph data ends up on Gephi default workspace.
+	/** Feedback key, Boolean: whether iterative processing was cut short to meet the job deadline. */
+	String TRUNCATED = "truncated";
+	
+	/** Layout Gephi graph data set. Graph data is read from, and left on, the given workspace.
+	 * @param workspace The job's own workspace; never the Gephi current workspace.
+	 * @param deadline Time (epoch millis) by which the whole job, export included, should be done.
+	 * Iterative stages may stop early to meet it, reporting {@link #TRUNCATED}. Long.MAX_VALUE for no deadline.
 	 * @return Map of meta data about the graph. 
 	 * @throws InterruptedException Thrown during long running iterative processing */
-	Map<String, Object> processGraph() throws InterruptedException;
+	Map<String, Object> processGraph(Workspace workspace, long deadline) throws InterruptedException;
+	
+	/** Layout as {@link #processGraph(Workspace, long)}, for a graph whose identity across renders is known.
+	 * Implementations may keep the finished layout under the key, and start later layouts of the key from it.
+	 * @param layoutKey Identity of the graph rendered, equal for every version of it; null if unknown. */
+	default Map<String, Object> processGraph(Workspace workspace, long deadline, String layoutKey) throws InterruptedException {
+		return processGraph(workspace, deadline);
+	}
 	
 }
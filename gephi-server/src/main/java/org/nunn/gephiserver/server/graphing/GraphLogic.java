@@ -11,6 +11,8 @@ public interface GraphLogic {
 	/** key for node-grouping attribute */
 	static final String KEY_TAG = "tag";
 	
-	Container create(Integer graphId, Map<String, Object> extraParam);
+	/** @param graphVersion Version of the graph the job's render is keyed by, see {@link GraphDataSource#getGraphVersion(Integer)},
+	 * or null if not read before the job ran. */
+	Container create(Integer graphId, String graphVersion, Map<String, Object> extraParam);
 	
 }
@@ -0,0 +1,79 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nunn.gephiserver.server.system.MetricRegistry;
+
+/**
+ * Render pipeline metrics, registered with {@link MetricRegistry}.
+ *
+ * Stages nest: "load" includes the "fetch_" stages, and "layout" includes the "layout_" stages of GraphLayoutStd.
+ *
+ * Stage timings taken in a forked worker JVM are captured per job and sent back with its response,
+ * then recorded here by the parent, so they are served the same as local ones.
+ *
+ * @author Rob
+ */
+public final class GraphMetrics {
+
+	public static final MetricRegistry.Histogram STAGE = MetricRegistry.INSTANCE.histogram("gephiserver_stage_seconds",
+			"Time spent in each render stage.", "stage");
+	public static final MetricRegistry.Histogram JOB = MetricRegistry.INSTANCE.histogram("gephiserver_job_seconds",
+			"Time spent running render jobs, from start to export.", null);
+	public static final MetricRegistry.Histogram QUEUE_WAIT = MetricRegistry.INSTANCE.histogram("gephiserver_queue_wait_seconds",
+			"Time render jobs spent queued before a worker started them.", null);
+	public static final MetricRegistry.Counter REJECTED = MetricRegistry.INSTANCE.counter("gephiserver_jobs_rejected_total",
+			"Render jobs rejected because the job queue was full.");
+	public static final MetricRegistry.Counter TIMED_OUT = MetricRegistry.INSTANCE.counter("gephiserver_requests_timed_out_total",
+			"Sync render requests that gave up waiting after jobTimeout.");
+	public static final MetricRegistry.Counter CANCELLED = MetricRegistry.INSTANCE.counter("gephiserver_jobs_cancelled_total",
+			"Render jobs cancelled, or interrupted, before completing.");
+	public static final MetricRegistry.Counter FAILED = MetricRegistry.INSTANCE.counter("gephiserver_jobs_failed_total",
+			"Render jobs that failed with an error.");
+	public static final MetricRegistry.Counter TRUNCATED = MetricRegistry.INSTANCE.counter("gephiserver_jobs_truncated_total",
+			"Render jobs whose layout was cut short to meet the job deadline.");
+	public static final MetricRegistry.Counter EXPIRED = MetricRegistry.INSTANCE.counter("gephiserver_async_results_expired_total",
+			"Async results discarded before being picked up.");
+
+	private static final ThreadLocal<Map<String, Long>> CAPTURE = new ThreadLocal<>();
+
+	private GraphMetrics() {
+	}
+
+	/** Loading this class registers its metrics, so calling this shows them from startup rather than first use. */
+	static void register() {
+	}
+
+	/** Record a stage's duration.
+	 * @param stage Name of the stage.
+	 * @param startedMillis Time the stage started, from System.currentTimeMillis(). */
+	public static void stage(String stage, long startedMillis) {
+		long millis = System.currentTimeMillis() - startedMillis;
+		STAGE.observeMillis(stage, millis);
+		Map<String, Long> captured = CAPTURE.get();
+		if (captured != null) {
+			captured.merge(stage, millis, Long::sum);
+		}
+	}
+
+	/** Start capturing stage timings recorded on the current thread, as well as recording them. */
+	static void startCapture() {
+		CAPTURE.set(new LinkedHashMap<>());
+	}
+
+	/** @return Stage timings captured on the current thread since {@link #startCapture()}, in millis by stage. */
+	static LinkedHashMap<String, Long> stopCapture() {
+		Map<String, Long> captured = CAPTURE.get();
+		CAPTURE.remove();
+		return captured != null ? new LinkedHashMap<>(captured) : new LinkedHashMap<>();
+	}
+
+	/** Record stage timings captured elsewhere, e.g. by a forked worker. */
+	static void replay(Map<String, Long> stageMillis) {
+		if (stageMillis != null) {
+			stageMillis.forEach(STAGE::observeMillis);
+		}
+	}
+
+}
\ No newline at end of file
@@ -3,9 +3,16 @@ package org.nunn.gephiserver.server.graphing;
 public class GraphOutput<OT> {
 	
 	public final OT output;
+	/** Whether the layout was cut short to meet the job deadline. The output is still complete, just rougher. */
+	public final boolean truncated;
 	
 	public GraphOutput(OT output) {
+		this(output, false);
+	}
+	
+	public GraphOutput(OT output, boolean truncated) {
 		this.output = output;
+		this.truncated = truncated;
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Directory of node positions from finished layouts, one file per layout key, see {@link GraphLayout#processGraph(org.gephi.project.api.Workspace, long, String)}.
+ * Each file holds the fingerprint of the graph laid out, whether the layout ran to completion, and every node's id and final x, y.
+ * Files are named by a digest of their key, and replaced atomically, so any number of JVMs, e.g. forked workers, may share a directory.
+ * The directory is bounded by a number of files: each write beyond it removes the least recently used, by modification time,
+ * which writes and {@link #touch(String)} update.
+ *
+ * @author Rob
+ */
+public class GraphPositionStore {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphPositionStore.class);
+
+	private static final int MAGIC = 0x47504f53; // "GPOS"
+	private static final int FORMAT = 1;
+	private static final String SUFFIX = ".positions";
+
+	/** Node positions of one finished layout. */
+	public static final class Positions {
+		/** Fingerprint of the nodes and edges laid out, to tell an unchanged graph. */
+		public final long fingerprint;
+		/** False if the layout was cut short, so is not settled. */
+		public final boolean complete;
+		public final String[] ids;
+		public final float[] xs;
+		public final float[] ys;
+
+		public Positions(long fingerprint, boolean complete, String[] ids, float[] xs, float[] ys) {
+			this.fingerprint = fingerprint;
+			this.complete = complete;
+			this.ids = ids;
+			this.xs = xs;
+			this.ys = ys;
+		}
+	}
+
+	private final Path dir;
+	private final int maxFiles;
+
+	/** @param maxFiles Most position files kept, or 0 for no bound. */
+	public GraphPositionStore(Path dir, int maxFiles) {
+		this.dir = dir;
+		this.maxFiles = maxFiles;
+	}
+
+	public Path getPath(String layoutKey) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(layoutKey.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return dir.resolve(name.append(SUFFIX).toString());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-1
+		}
+	}
+
+	/** @return Positions last written for the key, or null if there are none. */
+	public Positions read(String layoutKey) throws IOException {
+		try (InputStream file = Files.newInputStream(getPath(layoutKey))) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(file, 65536));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				throw new IOException("Not a position file of format " + FORMAT + ": " + getPath(layoutKey));
+			}
+			if ( ! layoutKey.equals(in.readUTF())) {
+				return null; // digest collision
+			}
+			long fingerprint = in.readLong();
+			boolean complete = in.readBoolean();
+			int count = in.readInt();
+			String[] ids = new String[count];
+			float[] xs = new float[count];
+			float[] ys = new float[count];
+			for (int i = 0; i < count; i++) {
+				ids[i] = in.readUTF();
+				xs[i] = in.readFloat();
+				ys[i] = in.readFloat();
+			}
+			return new Positions(fingerprint, complete, ids, xs, ys);
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/** Write positions for the key, replacing any already held. */
+	public void write(String layoutKey, Positions positions) throws IOException {
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, "positions", ".tmp");
+		try {
+			try (OutputStream file = Files.newOutputStream(temp)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 65536));
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeUTF(layoutKey);
+				out.writeLong(positions.fingerprint);
+				out.writeBoolean(positions.complete);
+				out.writeInt(positions.ids.length);
+				for (int i = 0; i < positions.ids.length; i++) {
+					out.writeUTF(positions.ids[i]);
+					out.writeFloat(positions.xs[i]);
+					out.writeFloat(positions.ys[i]);
+				}
+				out.flush();
+			}
+			Files.move(temp, getPath(layoutKey), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+		if (maxFiles > 0) {
+			evict();
+		}
+	}
+
+	/** Mark the key's positions as used, without rewriting them, so they are kept over less recently used ones. */
+	public void touch(String layoutKey) throws IOException {
+		try {
+			Files.setLastModifiedTime(getPath(layoutKey), FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch (NoSuchFileException e) {
+			// removed since read, so the next layout writes it afresh
+		}
+	}
+
+	/** Remove the least recently used files beyond maxFiles. Files another JVM removes meanwhile are skipped. */
+	private void evict() throws IOException {
+		Map<Path, FileTime> used = new HashMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+			for (Path file : files) {
+				try {
+					used.put(file, Files.getLastModifiedTime(file));
+				}
+				catch (NoSuchFileException e) {
+					// already removed
+				}
+			}
+		}
+		int excess = used.size() - maxFiles;
+		if (excess <= 0) {
+			return;
+		}
+		List<Path> oldest = new ArrayList<>(used.keySet());
+		oldest.sort(Comparator.comparing(used::get));
+		for (Path file : oldest.subList(0, excess)) {
+			Files.deleteIfExists(file);
+		}
+		LOGGER.debug("Evicted {} position files from {}", excess, dir);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,323 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nunn.gephiserver.server.graphing.GraphDataSource.EdgeComsumer;
+import org.nunn.gephiserver.server.graphing.GraphDataSource.NodeComsumer;
+
+/**
+ * Immutable copy of a graph's graph, node and edge rows at one version, held in columns of primitives.
+ *
+ * Node titles and tags are dictionary encoded: each distinct string is held once, and rows hold its index, -1 for null.
+ * Row order is the order the database returned rows in.
+ * Edge endpoints are also resolved to node row indexes, once per snapshot, so graphs can be built without looking up nodes by id.
+ *
+ * @author Rob
+ */
+public final class GraphSnapshot {
+
+	/** Rough heap bytes per object header plus reference, and per String beyond its chars, for sizing. */
+	private static final long OBJECT_BYTES = 16;
+	private static final long STRING_BYTES = 56;
+
+	// Columns are package visible for GraphStore to write
+	final String version;
+	final Map<String, Object> graph;
+
+	final int nodeCount;
+	final int[] nodeNums;
+	final int[] nodeTitles;
+	final int[] nodeTags;
+	final String[] titleDictionary;
+	final String[] tagDictionary;
+
+	final int edgeCount;
+	final int[] edgeNums;
+	final int[] edgeSources;
+	final int[] edgeTargets;
+	final float[] edgeVals;
+	final int[] edgeSourceIndexes;
+	final int[] edgeTargetIndexes;
+
+	private final long sizeOf;
+
+	private GraphSnapshot(Builder builder) {
+		this(builder.version, builder.graph,
+				Arrays.copyOf(builder.nodeNums, builder.nodeCount),
+				Arrays.copyOf(builder.nodeTitles, builder.nodeCount),
+				Arrays.copyOf(builder.nodeTags, builder.nodeCount),
+				builder.titles.toArray(), builder.tags.toArray(),
+				Arrays.copyOf(builder.edgeNums, builder.edgeCount),
+				Arrays.copyOf(builder.edgeSources, builder.edgeCount),
+				Arrays.copyOf(builder.edgeTargets, builder.edgeCount),
+				Arrays.copyOf(builder.edgeVals, builder.edgeCount),
+				null, null);
+	}
+
+	/** Columns are taken as given, not copied. Node columns must be of equal length, as must edge columns.
+	 * @param edgeSourceIndexes Node row indexes of edge sources, or null to resolve them here, as with edgeTargetIndexes. */
+	GraphSnapshot(String version, Map<String, Object> graph,
+			int[] nodeNums, int[] nodeTitles, int[] nodeTags, String[] titleDictionary, String[] tagDictionary,
+			int[] edgeNums, int[] edgeSources, int[] edgeTargets, float[] edgeVals, int[] edgeSourceIndexes, int[] edgeTargetIndexes) {
+		this.version = version;
+		this.graph = graph;
+		this.nodeCount = nodeNums.length;
+		this.nodeNums = nodeNums;
+		this.nodeTitles = nodeTitles;
+		this.nodeTags = nodeTags;
+		this.titleDictionary = titleDictionary;
+		this.tagDictionary = tagDictionary;
+		this.edgeCount = edgeNums.length;
+		this.edgeNums = edgeNums;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeVals = edgeVals;
+		if (edgeSourceIndexes == null || edgeTargetIndexes == null) {
+			this.edgeSourceIndexes = new int[edgeCount];
+			this.edgeTargetIndexes = new int[edgeCount];
+			indexEdges();
+		}
+		else {
+			this.edgeSourceIndexes = edgeSourceIndexes;
+			this.edgeTargetIndexes = edgeTargetIndexes;
+		}
+		this.sizeOf = estimateSize();
+	}
+
+	/** @return Version of the rows, as {@link GraphDataSource#getGraphVersion(java.sql.Connection, Integer)}. */
+	public String getVersion() {
+		return version;
+	}
+
+	/** @return Copy of the graph row, by column name, as {@link GraphDataSource#getGraphByID(java.sql.Connection, Integer)}. */
+	public Map<String, Object> getGraph() {
+		return new HashMap<>(graph);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getNodeNum(int index) {
+		return nodeNums[index];
+	}
+
+	public String getNodeTitle(int index) {
+		int title = nodeTitles[index];
+		return title >= 0 ? titleDictionary[title] : null;
+	}
+
+	public String getNodeTag(int index) {
+		int tag = nodeTags[index];
+		return tag >= 0 ? tagDictionary[tag] : null;
+	}
+
+	/** @return Index of the node's tag in the tag dictionary, -1 for null. Nodes with equal tags have equal codes. */
+	public int getNodeTagCode(int index) {
+		return nodeTags[index];
+	}
+
+	/** @return Number of distinct node tags. */
+	public int getTagCount() {
+		return tagDictionary.length;
+	}
+
+	/** @param code Index in the tag dictionary, from {@link #getNodeTagCode(int)}. */
+	public String getTag(int code) {
+		return tagDictionary[code];
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	public int getEdgeNum(int index) {
+		return edgeNums[index];
+	}
+
+	public int getEdgeSource(int index) {
+		return edgeSources[index];
+	}
+
+	public int getEdgeTarget(int index) {
+		return edgeTargets[index];
+	}
+
+	public float getEdgeVal(int index) {
+		return edgeVals[index];
+	}
+
+	/** @return Node row index of the edge's source, -1 if no node row has its num. */
+	public int getEdgeSourceIndex(int index) {
+		return edgeSourceIndexes[index];
+	}
+
+	/** @return Node row index of the edge's target, -1 if no node row has its num. */
+	public int getEdgeTargetIndex(int index) {
+		return edgeTargetIndexes[index];
+	}
+
+	/** Push node rows to the consumer, as {@link GraphDataSource#populateNodesForGraph} does. */
+	public void forEachNode(NodeComsumer consumer) {
+		for (int i = 0; i < nodeCount; i++) {
+			if ( ! consumer.push(nodeNums[i], getNodeTitle(i), getNodeTag(i))) {
+				break;
+			}
+		}
+	}
+
+	/** Push edge rows to the consumer, as {@link GraphDataSource#populateEdgesForGraph} does. */
+	public void forEachEdge(EdgeComsumer consumer) {
+		for (int i = 0; i < edgeCount; i++) {
+			if ( ! consumer.push(edgeNums[i], edgeSources[i], edgeTargets[i], edgeVals[i])) {
+				break;
+			}
+		}
+	}
+
+	/** Resolve edge endpoint nums to node row indexes, by binary search of node nums packed with their row index. */
+	private void indexEdges() {
+		long[] byNum = new long[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			byNum[i] = (long) nodeNums[i] << 32 | i;
+		}
+		Arrays.sort(byNum);
+		for (int i = 0; i < edgeCount; i++) {
+			edgeSourceIndexes[i] = nodeIndex(byNum, edgeSources[i]);
+			edgeTargetIndexes[i] = nodeIndex(byNum, edgeTargets[i]);
+		}
+	}
+
+	private static int nodeIndex(long[] byNum, int num) {
+		int low = 0;
+		int high = byNum.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midNum = (int) (byNum[mid] >> 32);
+			if (midNum < num) {
+				low = mid + 1;
+			}
+			else if (midNum > num) {
+				high = mid - 1;
+			}
+			else {
+				return (int) byNum[mid];
+			}
+		}
+		return -1;
+	}
+
+	/** @return Approximate heap bytes held, for bounding caches. */
+	public long sizeOf() {
+		return sizeOf;
+	}
+
+	private long estimateSize() {
+		long size = OBJECT_BYTES * 16 + STRING_BYTES + version.length() * 2L;
+		for (Object value : graph.values()) {
+			size += STRING_BYTES + (value instanceof String ? ((String) value).length() * 2L : 0);
+		}
+		size += nodeCount * 12L + edgeCount * 24L;
+		for (String title : titleDictionary) {
+			size += STRING_BYTES + title.length() * 2L;
+		}
+		for (String tag : tagDictionary) {
+			size += STRING_BYTES + tag.length() * 2L;
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%d nodes, %d edges, %d titles, %d tags, %d bytes]", getClass().getSimpleName(),
+				nodeCount, edgeCount, titleDictionary.length, tagDictionary.length, sizeOf);
+	}
+
+	/** Distinct strings in first seen order, each with its index. */
+	private static class Dictionary {
+		private final Map<String, Integer> indexes = new LinkedHashMap<>();
+
+		private int encode(String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer index = indexes.get(value);
+			if (index == null) {
+				index = indexes.size();
+				indexes.put(value, index);
+			}
+			return index;
+		}
+
+		private String[] toArray() {
+			return indexes.keySet().toArray(new String[indexes.size()]);
+		}
+	}
+
+	/** Accumulates rows pushed by the data source, growing columns as needed.
+	 * Node pushes and edge pushes may run concurrently with each other, as with concurrentFetch: they touch disjoint fields,
+	 * so each kind only needs to be pushed from one thread at a time. Building must wait for both, e.g. by joining the edge read,
+	 * which also makes its pushes visible to the building thread. */
+	static class Builder implements NodeComsumer, EdgeComsumer {
+		private final String version;
+		private final Map<String, Object> graph;
+
+		private int nodeCount;
+		private int[] nodeNums = new int[256];
+		private int[] nodeTitles = new int[256];
+		private int[] nodeTags = new int[256];
+		private final Dictionary titles = new Dictionary();
+		private final Dictionary tags = new Dictionary();
+
+		private int edgeCount;
+		private int[] edgeNums = new int[256];
+		private int[] edgeSources = new int[256];
+		private int[] edgeTargets = new int[256];
+		private float[] edgeVals = new float[256];
+
+		Builder(String version, Map<String, Object> graph) {
+			this.version = version;
+			this.graph = new HashMap<>(graph);
+		}
+
+		@Override
+		public boolean push(int num, String name, String tag) {
+			if (nodeCount == nodeNums.length) {
+				int length = nodeCount * 2;
+				nodeNums = Arrays.copyOf(nodeNums, length);
+				nodeTitles = Arrays.copyOf(nodeTitles, length);
+				nodeTags = Arrays.copyOf(nodeTags, length);
+			}
+			nodeNums[nodeCount] = num;
+			nodeTitles[nodeCount] = titles.encode(name);
+			nodeTags[nodeCount] = tags.encode(tag);
+			nodeCount++;
+			return true;
+		}
+
+		@Override
+		public boolean push(int num, int source, int target, float val) {
+			if (edgeCount == edgeNums.length) {
+				int length = edgeCount * 2;
+				edgeNums = Arrays.copyOf(edgeNums, length);
+				edgeSources = Arrays.copyOf(edgeSources, length);
+				edgeTargets = Arrays.copyOf(edgeTargets, length);
+				edgeVals = Arrays.copyOf(edgeVals, length);
+			}
+			edgeNums[edgeCount] = num;
+			edgeSources[edgeCount] = source;
+			edgeTargets[edgeCount] = target;
+			edgeVals[edgeCount] = val;
+			edgeCount++;
+			return true;
+		}
+
+		GraphSnapshot build() {
+			return new GraphSnapshot(this);
+		}
+	}
+
+}
\ No newline at end of file
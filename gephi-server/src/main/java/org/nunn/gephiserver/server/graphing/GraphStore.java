@@ -0,0 +1,342 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Directory of graph files, one per graph, each holding a {@link GraphSnapshot} written once from the database.
+ * Files are read through a memory mapping, copying whole columns at a time, so no database connection is needed to render them.
+ *
+ * A file is laid out big endian as:
+ * <ul>
+ * <li>header: magic, format, then the length and content of a block holding the snapshot version and graph row</li>
+ * <li>counts: nodes, edges, distinct titles, distinct tags</li>
+ * <li>node columns: nums, title codes, tag codes</li>
+ * <li>title then tag dictionaries: offsets of each string's UTF-8 bytes, one more than there are strings, then the bytes, padded to 4</li>
+ * <li>edge columns: nums, sources, targets, source node indexes, target node indexes, vals</li>
+ * </ul>
+ * Files are replaced atomically, so readers see either the old or new graph, never a partly written one.
+ *
+ * @author Rob
+ */
+public class GraphStore {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphStore.class);
+
+	private static final int MAGIC = 0x47535452; // "GSTR"
+	private static final int FORMAT = 1;
+	private static final String SUFFIX = ".graph";
+
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_INTEGER = 1;
+	private static final byte TYPE_LONG = 2;
+	private static final byte TYPE_FLOAT = 3;
+	private static final byte TYPE_DOUBLE = 4;
+	private static final byte TYPE_STRING = 5;
+	private static final byte TYPE_SHORT = 6;
+	private static final byte TYPE_BOOLEAN = 7;
+
+	private final Path dir;
+
+	public GraphStore(Path dir) {
+		this.dir = dir;
+	}
+
+	public Path getPath(Integer graphId) {
+		return dir.resolve(graphId + SUFFIX);
+	}
+
+	public boolean contains(Integer graphId) {
+		return Files.isRegularFile(getPath(graphId));
+	}
+
+	/** @return Version of the stored snapshot, read from its header alone. */
+	public String readVersion(Integer graphId) throws IOException {
+		return readHeader(graphId).readUTF();
+	}
+
+	/** @return The file's header block, without reading the rest of the file. */
+	private DataInputStream readHeader(Integer graphId) throws IOException {
+		try (FileChannel channel = FileChannel.open(getPath(graphId), StandardOpenOption.READ)) {
+			ByteBuffer start = readFully(channel, ByteBuffer.allocate(12));
+			return header(readFully(channel, ByteBuffer.allocate(headerLength(start))).array());
+		}
+	}
+
+	public GraphSnapshot read(Integer graphId) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(getPath(graphId), StandardOpenOption.READ)) {
+			// The mapping outlives the channel, and is released once the buffer is collected
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		byte[] headerBytes = new byte[headerLength(buf)];
+		buf.get(headerBytes);
+		DataInputStream header = header(headerBytes);
+		String version = header.readUTF();
+		Map<String, Object> graph = readGraph(header);
+
+		int nodeCount = buf.getInt();
+		int edgeCount = buf.getInt();
+		int titleCount = buf.getInt();
+		int tagCount = buf.getInt();
+
+		int[] nodeNums = ints(buf, nodeCount);
+		int[] nodeTitles = ints(buf, nodeCount);
+		int[] nodeTags = ints(buf, nodeCount);
+		String[] titles = strings(buf, titleCount);
+		String[] tags = strings(buf, tagCount);
+		int[] edgeNums = ints(buf, edgeCount);
+		int[] edgeSources = ints(buf, edgeCount);
+		int[] edgeTargets = ints(buf, edgeCount);
+		int[] edgeSourceIndexes = ints(buf, edgeCount);
+		int[] edgeTargetIndexes = ints(buf, edgeCount);
+		float[] edgeVals = new float[edgeCount];
+		buf.asFloatBuffer().get(edgeVals);
+
+		return new GraphSnapshot(version, graph, nodeNums, nodeTitles, nodeTags, titles, tags,
+				edgeNums, edgeSources, edgeTargets, edgeVals, edgeSourceIndexes, edgeTargetIndexes);
+	}
+
+	/** Write the snapshot as the graph's file, replacing any existing one. */
+	public void write(Integer graphId, GraphSnapshot snapshot) throws IOException {
+		Files.createDirectories(dir);
+		Path path = getPath(graphId);
+		Path tmp = Files.createTempFile(dir, graphId + ".", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(256);
+				DataOutputStream header = new DataOutputStream(headerBytes);
+				header.writeUTF(snapshot.version);
+				writeGraph(header, snapshot.graph);
+				header.flush();
+
+				ByteBuffer start = ByteBuffer.allocate(28);
+				start.putInt(MAGIC).putInt(FORMAT).putInt(headerBytes.size());
+				writeFully(channel, (ByteBuffer) start.flip());
+				writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+
+				start.clear();
+				start.putInt(snapshot.nodeCount).putInt(snapshot.edgeCount)
+						.putInt(snapshot.titleDictionary.length).putInt(snapshot.tagDictionary.length);
+				writeFully(channel, (ByteBuffer) start.flip());
+
+				writeInts(channel, snapshot.nodeNums);
+				writeInts(channel, snapshot.nodeTitles);
+				writeInts(channel, snapshot.nodeTags);
+				writeStrings(channel, snapshot.titleDictionary);
+				writeStrings(channel, snapshot.tagDictionary);
+				writeInts(channel, snapshot.edgeNums);
+				writeInts(channel, snapshot.edgeSources);
+				writeInts(channel, snapshot.edgeTargets);
+				writeInts(channel, snapshot.edgeSourceIndexes);
+				writeInts(channel, snapshot.edgeTargetIndexes);
+				ByteBuffer vals = ByteBuffer.allocate(snapshot.edgeCount * 4);
+				vals.asFloatBuffer().put(snapshot.edgeVals);
+				writeFully(channel, vals);
+
+				channel.force(false);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOGGER.info("Stored graph {} in {}: {}", graphId, path, snapshot);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** @return Titles of stored graphs, by graph id. Unreadable files are skipped. */
+	public Map<Integer, String> listGraphs() throws IOException {
+		Map<Integer, String> result = new HashMap<>();
+		if ( ! Files.isDirectory(dir)) {
+			return result;
+		}
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					Integer graphId = Integer.valueOf(name.substring(0, name.length() - SUFFIX.length()));
+					DataInputStream header = readHeader(graphId);
+					header.readUTF();
+					result.put(graphId, (String) readGraph(header).get("title"));
+				}
+				catch (NumberFormatException | IOException e) {
+					LOGGER.warn("Skipping unreadable graph file {}", file, e);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int headerLength(ByteBuffer start) throws IOException {
+		if (start.remaining() < 12 || start.getInt() != MAGIC) {
+			throw new IOException("Not a graph file");
+		}
+		int format = start.getInt();
+		if (format != FORMAT) {
+			throw new IOException("Unsupported graph file format " + format);
+		}
+		return start.getInt();
+	}
+
+	private static DataInputStream header(byte[] headerBytes) {
+		return new DataInputStream(new ByteArrayInputStream(headerBytes));
+	}
+
+	private static int[] ints(ByteBuffer buf, int count) {
+		int[] values = new int[count];
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + count * 4);
+		return values;
+	}
+
+	private static String[] strings(ByteBuffer buf, int count) {
+		int[] offsets = ints(buf, count + 1);
+		int length = offsets[count];
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		buf.position(buf.position() + padding(length));
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+		}
+		return values;
+	}
+
+	private static void writeInts(FileChannel channel, int[] values) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(values.length * 4);
+		buf.asIntBuffer().put(values);
+		writeFully(channel, buf);
+	}
+
+	private static void writeStrings(FileChannel channel, String[] values) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int[] offsets = new int[values.length + 1];
+		for (int i = 0; i < values.length; i++) {
+			byte[] utf8 = values[i].getBytes(StandardCharsets.UTF_8);
+			bytes.write(utf8, 0, utf8.length);
+			offsets[i + 1] = bytes.size();
+		}
+		bytes.write(new byte[padding(bytes.size())], 0, padding(bytes.size()));
+		writeInts(channel, offsets);
+		writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	private static int padding(int length) {
+		return (4 - length % 4) % 4;
+	}
+
+	/** @return The buffer, filled and flipped for reading. */
+	private static ByteBuffer readFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) {
+				throw new EOFException("Truncated graph file");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	/** Graph row values are written with their type, so they read back as the JDBC driver gave them. */
+	private static void writeGraph(DataOutputStream out, Map<String, Object> graph) throws IOException {
+		out.writeInt(graph.size());
+		for (Map.Entry<String, Object> column : graph.entrySet()) {
+			out.writeUTF(column.getKey());
+			Object value = column.getValue();
+			if (value == null) {
+				out.writeByte(TYPE_NULL);
+			}
+			else if (value instanceof Integer) {
+				out.writeByte(TYPE_INTEGER);
+				out.writeInt((Integer) value);
+			}
+			else if (value instanceof Long) {
+				out.writeByte(TYPE_LONG);
+				out.writeLong((Long) value);
+			}
+			else if (value instanceof Float) {
+				out.writeByte(TYPE_FLOAT);
+				out.writeFloat((Float) value);
+			}
+			else if (value instanceof Double) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble((Double) value);
+			}
+			else if (value instanceof Short) {
+				out.writeByte(TYPE_SHORT);
+				out.writeShort((Short) value);
+			}
+			else if (value instanceof Boolean) {
+				out.writeByte(TYPE_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			}
+			else {
+				out.writeByte(TYPE_STRING);
+				out.writeUTF(value.toString());
+			}
+		}
+	}
+
+	private static Map<String, Object> readGraph(DataInputStream in) throws IOException {
+		int columns = in.readInt();
+		Map<String, Object> graph = new HashMap<>(columns);
+		for (int i = 0; i < columns; i++) {
+			String key = in.readUTF();
+			byte type = in.readByte();
+			switch (type) {
+			case TYPE_NULL:
+				graph.put(key, null);
+				break;
+			case TYPE_INTEGER:
+				graph.put(key, in.readInt());
+				break;
+			case TYPE_LONG:
+				graph.put(key, in.readLong());
+				break;
+			case TYPE_FLOAT:
+				graph.put(key, in.readFloat());
+				break;
+			case TYPE_DOUBLE:
+				graph.put(key, in.readDouble());
+				break;
+			case TYPE_SHORT:
+				graph.put(key, in.readShort());
+				break;
+			case TYPE_BOOLEAN:
+				graph.put(key, in.readBoolean());
+				break;
+			case TYPE_STRING:
+				graph.put(key, in.readUTF());
+				break;
+			default:
+				throw new IOException("Unknown graph column type " + type);
+			}
+		}
+		return graph;
+	}
+
+}
\ No newline at end of file
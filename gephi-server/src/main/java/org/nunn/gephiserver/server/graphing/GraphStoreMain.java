@@ -0,0 +1,49 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Command line entry point writing graphs from the database to the graph store in graphStoreDir, see {@link GraphStore}.
+ *
+ * Arguments are the ids of the graphs to store, or none to store every graph in the database.
+ * Rerun for a graph to pick up later changes to its rows: its stored copy is served until then.
+ *
+ * @author Rob
+ */
+public final class GraphStoreMain {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphStoreMain.class);
+
+	private GraphStoreMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		GraphDataSource graphDataSource = new GraphDataSource(true);
+		try {
+			List<Integer> graphIds = new ArrayList<>();
+			if (args.length == 0) {
+				try (Connection con = graphDataSource.getConnection()) {
+					graphIds.addAll(graphDataSource.listGraphs(con).keySet());
+				}
+			}
+			for (String arg : args) {
+				graphIds.add(Integer.valueOf(arg));
+			}
+
+			for (Integer graphId : graphIds) {
+				long startTime = System.currentTimeMillis();
+				GraphSnapshot snapshot = graphDataSource.storeGraph(graphId);
+				LOGGER.info("Stored graph {} {} in {}ms", graphId, snapshot, System.currentTimeMillis() - startTime);
+			}
+		}
+		finally {
+			graphDataSource.close();
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Entry point of a forked render worker JVM, see {@link GraphWorkerProcess}.
+ *
+ * Reads job requests from standard input and answers each on standard output, until standard input is closed.
+ * Everything else written to standard out, e.g. console logging, is redirected to standard error.
+ *
+ * @author Rob
+ */
+public final class GraphWorkerMain {
+
+	private static Logger LOGGER; // created only once System.out is redirected
+
+	private final GraphDataSource graphDataSource = new GraphDataSource();
+	private final Map<String, Object> components = new HashMap<>();
+
+	private GraphWorkerMain() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		DataOutputStream toParent = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		System.setOut(System.err);
+
+		LOGGER = LogManager.getLogger(GraphWorkerMain.class);
+
+		DataInputStream fromParent = new DataInputStream(new BufferedInputStream(System.in));
+
+		GraphWorkerMain worker = new GraphWorkerMain();
+		try {
+			while (true) {
+				GraphWorkerMessage.Request request;
+				try {
+					request = GraphWorkerMessage.read(fromParent);
+				}
+				catch (EOFException e) {
+					break; // parent has gone away
+				}
+				GraphWorkerMessage.write(toParent, worker.render(request));
+			}
+		}
+		finally {
+			worker.graphDataSource.close();
+			LOGGER.info("Forked graph worker exiting");
+		}
+	}
+
+	private GraphWorkerMessage.Response render(GraphWorkerMessage.Request request) {
+		try {
+			GraphLogic logic = component(request.logicClass, true);
+			GraphLayout layout = component(request.layoutClass, false);
+			GraphExporter<Object> exporter = component(request.exporterClass, false);
+
+			LOGGER.debug("Forked graph worker running job {}", request.uuid);
+			GraphMetrics.startCapture();
+			GraphJob<Object> job = new GraphJob<>(logic, layout, exporter, request.graphId, request.extraParam, request.deadline);
+			job.setGraphVersion(request.graphVersion);
+			GraphOutput<Object> output = job.call();
+			return GraphWorkerMessage.Response.success(exporter.toBytes(output.output), output.truncated, GraphMetrics.stopCapture());
+		}
+		catch (CancellationException e) {
+			GraphMetrics.stopCapture();
+			return GraphWorkerMessage.Response.cancelled(e.getMessage());
+		}
+		catch (Exception e) {
+			GraphMetrics.stopCapture();
+			LOGGER.error("Forked graph worker failed on job {}", request.uuid, e);
+			return GraphWorkerMessage.Response.failure(e);
+		}
+	}
+
+	/** Graph components are stateless singletons in the parent, so are cached here by class too.
+	 * @param withDataSource Whether the component is constructed with our GraphDataSource, as GraphLogic implementations are. */
+	@SuppressWarnings("unchecked")
+	private <T> T component(String className, boolean withDataSource) throws ReflectiveOperationException {
+		Object component = components.get(className);
+		if (component == null) {
+			Class<?> type = Class.forName(className);
+			component = withDataSource
+					? type.getConstructor(GraphDataSource.class).newInstance(graphDataSource)
+					: type.getConstructor().newInstance();
+			components.put(className, component);
+		}
+		return (T) component;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Length prefixed frames exchanged with a forked render worker over its standard input and output. */
+final class GraphWorkerMessage {
+
+	/** Render job sent to a worker. Graph components are named by class, and instantiated in the worker. */
+	static final class Request implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String uuid;
+		final String logicClass;
+		final String layoutClass;
+		final String exporterClass;
+		final Integer graphId;
+		/** Null if not read before the job ran. */
+		final String graphVersion;
+		final HashMap<String, Object> extraParam;
+		final long deadline;
+
+		Request(String uuid, GraphLogic logic, GraphLayout layout, GraphExporter<?> exporter, Integer graphId, String graphVersion, Map<String, Object> extraParam, long deadline) {
+			this.uuid = uuid;
+			this.logicClass = logic.getClass().getName();
+			this.layoutClass = layout.getClass().getName();
+			this.exporterClass = exporter.getClass().getName();
+			this.graphId = graphId;
+			this.graphVersion = graphVersion;
+			this.extraParam = new HashMap<>(extraParam);
+			this.deadline = deadline;
+		}
+	}
+
+	/** Result of a render job: either the exported bytes, or a failure description. */
+	static final class Response implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final byte[] output;
+		final String error;
+		final boolean cancelled;
+		final boolean truncated;
+		/** Stage timings taken in the worker, see {@link GraphMetrics}. */
+		final LinkedHashMap<String, Long> stageMillis;
+
+		private Response(byte[] output, String error, boolean cancelled, boolean truncated, LinkedHashMap<String, Long> stageMillis) {
+			this.output = output;
+			this.error = error;
+			this.cancelled = cancelled;
+			this.truncated = truncated;
+			this.stageMillis = stageMillis;
+		}
+
+		static Response success(byte[] output, boolean truncated, LinkedHashMap<String, Long> stageMillis) {
+			return new Response(output, null, false, truncated, stageMillis);
+		}
+
+		static Response failure(Throwable t) {
+			return new Response(null, t.getClass().getName() + ": " + t.getMessage(), false, false, null);
+		}
+
+		static Response cancelled(String message) {
+			return new Response(null, message, true, false, null);
+		}
+	}
+
+	private GraphWorkerMessage() {
+	}
+
+	static void write(DataOutputStream out, Serializable message) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(message);
+		}
+		out.writeInt(baos.size());
+		baos.writeTo(out);
+		out.flush();
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends Serializable> T read(DataInputStream in) throws IOException {
+		byte[] frame = new byte[in.readInt()];
+		in.readFully(frame);
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(frame))) {
+			return (T) ois.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Unknown worker message type", e);
+		}
+	}
+
+}
\ No newline at end of file
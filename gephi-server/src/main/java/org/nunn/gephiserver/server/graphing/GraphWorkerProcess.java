@@ -0,0 +1,159 @@
+package org.nunn.gephiserver.server.graphing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nunn.gephiserver.server.Props;
+
+/**
+ * Parent side handle on a long lived child JVM running {@link GraphWorkerMain}.
+ *
+ * One process is owned by each executor thread, so a process only ever has one job in flight.
+ * A process that exits, or fails the pipe protocol, is replaced before the owning thread takes its next job.
+ *
+ * @author Rob
+ */
+final class GraphWorkerProcess {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphWorkerProcess.class);
+
+	private static final Pattern ARG_SPLITTER = Pattern.compile("\\s+");
+	private static final long POLL_MILLIS = 10L;
+
+	private static final ThreadLocal<GraphWorkerProcess> CURRENT = new ThreadLocal<>();
+	private static final Set<GraphWorkerProcess> LIVE = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+	private final Process process;
+	private final DataOutputStream toWorker;
+	private final DataInputStream fromWorker;
+
+	private GraphWorkerProcess() throws IOException {
+		ProcessBuilder pb = new ProcessBuilder(command());
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT); // worker logs go to our console
+		process = pb.start();
+		toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		LIVE.add(this);
+		LOGGER.info("Started forked graph worker for {}", Thread.currentThread().getName());
+	}
+
+	private static List<String> command() {
+		Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+
+		List<String> command = new ArrayList<>();
+		command.add(java.toString());
+
+		String jvmArgs = Props.INSTANCE.getPropertyAsString("forkedWorkerJvmArgs", "-Xmx1g -XX:+ExitOnOutOfMemoryError").trim();
+		if ( ! jvmArgs.isEmpty()) {
+			Collections.addAll(command, ARG_SPLITTER.split(jvmArgs));
+		}
+
+		String confDir = System.getProperty(Props.APP_CONF_DIR_PROPERTY_NAME);
+		if (confDir != null) {
+			command.add("-D" + Props.APP_CONF_DIR_PROPERTY_NAME + "=" + confDir);
+		}
+
+		command.add("-cp");
+		command.add(Props.INSTANCE.getPropertyAsString("forkedWorkerClasspath", GraphWorkerProcess::defaultClasspath));
+		command.add(GraphWorkerMain.class.getName());
+		return command;
+	}
+
+	/** Inside a servlet container our classes are in WEB-INF/classes, with dependencies in sibling WEB-INF/lib. */
+	private static String defaultClasspath() {
+		Path appLocation = Props.INSTANCE.getAppLocation();
+		Path lib = appLocation.resolveSibling("lib");
+		if (lib.toFile().isDirectory()) {
+			return appLocation + File.pathSeparator + lib.resolve("*");
+		}
+		return appLocation + File.pathSeparator + System.getProperty("java.class.path");
+	}
+
+	/** @return The worker process owned by the current thread, started if need be. */
+	static GraphWorkerProcess forCurrentThread() throws IOException {
+		GraphWorkerProcess worker = CURRENT.get();
+		if (worker == null || ! worker.process.isAlive()) {
+			if (worker != null) {
+				LOGGER.warn("Forked graph worker for {} exited with {}, restarting", Thread.currentThread().getName(), worker.process.exitValue());
+				worker.destroy();
+			}
+			worker = new GraphWorkerProcess();
+			CURRENT.set(worker);
+		}
+		return worker;
+	}
+
+	/** Starts the current thread's worker process ahead of its first job. */
+	static void startForCurrentThread() {
+		try {
+			forCurrentThread();
+		}
+		catch (IOException e) {
+			LOGGER.error("Failed to start forked graph worker", e);
+		}
+	}
+
+	static void destroyAll() {
+		for (GraphWorkerProcess worker : LIVE) {
+			worker.destroy();
+		}
+	}
+
+	private void destroy() {
+		LIVE.remove(this);
+		process.destroyForcibly();
+	}
+
+	/** Sends a job to the worker process and waits for the exported bytes.
+	 * Waiting polls rather than blocks on the pipe, so that cancelling the job can kill a runaway render.
+	 * @return The successful response. */
+	GraphWorkerMessage.Response render(GraphWorkerMessage.Request request) throws CancellationException {
+		GraphWorkerMessage.Response response;
+		try {
+			GraphWorkerMessage.write(toWorker, request);
+			while (fromWorker.available() < Integer.BYTES) {
+				if ( ! process.isAlive()) {
+					throw new IOException("Worker process exited with " + process.exitValue());
+				}
+				Thread.sleep(POLL_MILLIS);
+			}
+			response = GraphWorkerMessage.read(fromWorker);
+		}
+		catch (InterruptedException e) {
+			LOGGER.debug("Graph job {} interrupted, killing its worker process", request.uuid);
+			destroy();
+			CURRENT.remove();
+			throw new CancellationException("Graph job interrupted during processing");
+		}
+		catch (IOException e) {
+			destroy();
+			CURRENT.remove();
+			startForCurrentThread();
+			throw new RuntimeException("Forked graph worker failed on job " + request.uuid, e);
+		}
+
+		if (response.cancelled) {
+			throw new CancellationException(response.error);
+		}
+		if (response.error != null) {
+			throw new RuntimeException("Forked graph worker failed on job " + request.uuid + ": " + response.error);
+		}
+		return response;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+import org.nunn.gephiserver.server.Props;
+
+/**
+ * A Gephi graph's nodes and edges as indexes, for layout and statistics code working on primitive arrays.
+ * Nodes are indexed in the graph's iteration order. Edges are held as CSR adjacency: the neighbours of node i
+ * are neighbours[offsets[i]] to neighbours[offsets[i + 1] - 1]. Self loops are left out.
+ *
+ * Node positions are held here too, as struct of arrays, so layout stages move them without touching the nodes.
+ * They are written to the nodes once, by {@link #writePositions()}, when the last such stage is done.
+ *
+ * @author Rob
+ */
+public final class GraphArrays {
+
+	/** Shared by every job computing over arrays, as jobs already run on their own worker threads.
+	 * Sized by layoutThreads, by default one thread per core. */
+	static final ForkJoinPool POOL = new ForkJoinPool(
+			Math.max(1, Props.INSTANCE.getPropertyAsInteger("layoutThreads", Runtime.getRuntime().availableProcessors())),
+			pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("Graph_Layout_" + thread.getPoolIndex());
+				return thread;
+			},
+			null, false);
+
+	/** Side of the square over which nodes are scattered when not read from a graph, as import's random placement. */
+	private static final float SCATTER_SIZE = 1000f;
+
+	/** Nodes by index, or null if built from rows. */
+	final Node[] nodes;
+	public final int nodeCount;
+	/** Edge sources and targets, as node indexes, and their weights. */
+	final int[] sources;
+	final int[] targets;
+	final float[] weights;
+	/** Node positions by index. */
+	public final float[] xs;
+	public final float[] ys;
+
+	public GraphArrays(Graph graph) {
+		nodes = graph.getNodes().toArray();
+		nodeCount = nodes.length;
+		xs = new float[nodeCount];
+		ys = new float[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			xs[i] = nodes[i].x();
+			ys[i] = nodes[i].y();
+		}
+
+		// Node indexes by store id, which is dense but may have gaps after removals
+		int maxStoreId = -1;
+		for (Node node : nodes) {
+			maxStoreId = Math.max(maxStoreId, node.getStoreId());
+		}
+		int[] indexes = new int[maxStoreId + 1];
+		for (int i = 0; i < nodeCount; i++) {
+			indexes[nodes[i].getStoreId()] = i;
+		}
+
+		Edge[] edges = graph.getEdges().toArray();
+		int edgeCount = 0;
+		int[] edgeSources = new int[edges.length];
+		int[] edgeTargets = new int[edges.length];
+		float[] edgeWeights = new float[edges.length];
+		for (Edge edge : edges) {
+			if ( ! edge.isSelfLoop()) {
+				edgeSources[edgeCount] = indexes[edge.getSource().getStoreId()];
+				edgeTargets[edgeCount] = indexes[edge.getTarget().getStoreId()];
+				edgeWeights[edgeCount] = (float) edge.getWeight();
+				edgeCount++;
+			}
+		}
+		sources = edgeCount == edges.length ? edgeSources : Arrays.copyOf(edgeSources, edgeCount);
+		targets = edgeCount == edges.length ? edgeTargets : Arrays.copyOf(edgeTargets, edgeCount);
+		weights = edgeCount == edges.length ? edgeWeights : Arrays.copyOf(edgeWeights, edgeCount);
+	}
+
+	/** Build from edge rows, without a Gephi graph, e.g. to benchmark layout on its own.
+	 * Nodes are scattered at random, seeded by the node count, as import would place them.
+	 * @param sources Edge sources, as node indexes from 0, as are targets. Self loops are left out.
+	 * @param weights Edge weights. */
+	public GraphArrays(int nodeCount, int[] sources, int[] targets, float[] weights) {
+		this.nodes = null;
+		this.nodeCount = nodeCount;
+		int edgeCount = 0;
+		int[] edgeSources = new int[sources.length];
+		int[] edgeTargets = new int[sources.length];
+		float[] edgeWeights = new float[sources.length];
+		for (int e = 0; e < sources.length; e++) {
+			if (sources[e] != targets[e]) {
+				edgeSources[edgeCount] = sources[e];
+				edgeTargets[edgeCount] = targets[e];
+				edgeWeights[edgeCount] = weights[e];
+				edgeCount++;
+			}
+		}
+		this.sources = Arrays.copyOf(edgeSources, edgeCount);
+		this.targets = Arrays.copyOf(edgeTargets, edgeCount);
+		this.weights = Arrays.copyOf(edgeWeights, edgeCount);
+		xs = new float[nodeCount];
+		ys = new float[nodeCount];
+		Random random = new Random(nodeCount);
+		for (int i = 0; i < nodeCount; i++) {
+			xs[i] = (random.nextFloat() - 0.5f) * SCATTER_SIZE;
+			ys[i] = (random.nextFloat() - 0.5f) * SCATTER_SIZE;
+		}
+	}
+
+	/** Write the positions to the nodes. Does nothing if built from rows. */
+	public void writePositions() {
+		if (nodes != null) {
+			for (int i = 0; i < nodeCount; i++) {
+				nodes[i].setX(xs[i]);
+				nodes[i].setY(ys[i]);
+			}
+		}
+	}
+
+	/** CSR adjacency, with each neighbour's edge weight. */
+	public static final class Csr {
+		public final int[] offsets;
+		public final int[] neighbours;
+		public final float[] weights;
+
+		private Csr(int[] offsets, int[] neighbours, float[] weights) {
+			this.offsets = offsets;
+			this.neighbours = neighbours;
+			this.weights = weights;
+		}
+	}
+
+	/** @return Adjacency listing every edge from both its ends. */
+	public Csr undirected() {
+		return csr(true);
+	}
+
+	/** @return Adjacency listing every edge from its source only. */
+	public Csr outgoing() {
+		return csr(false);
+	}
+
+	private Csr csr(boolean bothEnds) {
+		int[] offsets = new int[nodeCount + 1];
+		for (int e = 0; e < sources.length; e++) {
+			offsets[sources[e] + 1]++;
+			if (bothEnds) {
+				offsets[targets[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] neighbours = new int[offsets[nodeCount]];
+		float[] neighbourWeights = new float[offsets[nodeCount]];
+		int[] fill = new int[nodeCount];
+		for (int e = 0; e < sources.length; e++) {
+			int source = sources[e];
+			int target = targets[e];
+			neighbourWeights[offsets[source] + fill[source]] = weights[e];
+			neighbours[offsets[source] + fill[source]++] = target;
+			if (bothEnds) {
+				neighbourWeights[offsets[target] + fill[target]] = weights[e];
+				neighbours[offsets[target] + fill[target]++] = source;
+			}
+		}
+		return new Csr(offsets, neighbours, neighbourWeights);
+	}
+
+}
\ No newline at end of file
@@ -1,22 +1,91 @@
 package org.nunn.gephiserver.server.graphing.impl;
 
+import java.awt.Color;
 import java.io.ByteArrayOutputStream;
 
-import org.gephi.io.exporter.preview.PDFExporter;
+import org.gephi.preview.api.PDFTarget;
+import org.gephi.preview.api.PreviewProperties;
+import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.api.RenderTarget;
+import org.gephi.project.api.Workspace;
 import org.nunn.gephiserver.server.graphing.GraphExporter;
 
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfWriter;
+
 public class GraphExporterPDF implements GraphExporter<ByteArrayOutputStream> {
 
+	/** As Gephi's PDFExporter defaults. */
+	private static final float MARGIN = 18f;
+	
 	/** Uses Gephi to lay out a network diagram.
+	 * Renders as Gephi's PDFExporter does, but see {@link GraphExporter#refreshPreview(Workspace)}.
 	 * @return PDF data network diagram. */
 	@Override
-	public ByteArrayOutputStream export() {
-		PDFExporter pdfExporter = (PDFExporter) EXPORT_CONTROLLER.getExporter("pdf");
+	public ByteArrayOutputStream export(Workspace workspace) {
+		PreviewProperties props = GraphExporter.refreshPreview(workspace).getProperties();
+		
+		Rectangle pageSize = new Rectangle(PageSize.A4);
+		Color background = props.getColorValue(PreviewProperty.BACKGROUND_COLOR);
+		if (background != null) {
+			pageSize.setBackgroundColor(new BaseColor(background.getRed(), background.getGreen(), background.getBlue()));
+		}
 		
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		EXPORT_CONTROLLER.exportStream(baos, pdfExporter);
+		Document document = new Document(pageSize);
+		try {
+			PdfWriter pdfWriter = PdfWriter.getInstance(document, baos);
+			pdfWriter.setPdfVersion(PdfWriter.PDF_VERSION_1_5);
+			pdfWriter.setFullCompression();
+			document.open();
+			
+			PdfContentByte cb = pdfWriter.getDirectContent();
+			cb.saveState();
+			props.putValue(PDFTarget.LANDSCAPE, false);
+			props.putValue(PDFTarget.PAGESIZE, pageSize);
+			props.putValue(PDFTarget.MARGIN_TOP, MARGIN);
+			props.putValue(PDFTarget.MARGIN_LEFT, MARGIN);
+			props.putValue(PDFTarget.MARGIN_BOTTOM, MARGIN);
+			props.putValue(PDFTarget.MARGIN_RIGHT, MARGIN);
+			props.putValue(PDFTarget.PDF_CONTENT_BYTE, cb);
+			
+			PDFTarget target = (PDFTarget) PREVIEW_CONTROLLER.getRenderTarget(RenderTarget.PDF_TARGET, workspace);
+			PREVIEW_CONTROLLER.render(target, workspace);
+			
+			cb.restoreState();
+			document.close();
+		}
+		catch (DocumentException e) {
+			throw new RuntimeException("PDF export failed", e);
+		}
+		finally {
+			props.putValue(PDFTarget.PDF_CONTENT_BYTE, null);
+			props.putValue(PDFTarget.PAGESIZE, null);
+		}
 		
 		return baos;
 	}
 	
+	@Override
+	public byte[] toBytes(ByteArrayOutputStream output) {
+		return output.toByteArray();
+	}
+	
+	@Override
+	public ByteArrayOutputStream fromBytes(byte[] bytes) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length);
+		baos.write(bytes, 0, bytes.length);
+		return baos;
+	}
+	
+	@Override
+	public long sizeOf(ByteArrayOutputStream output) {
+		return output.size();
+	}
+	
 }
\ No newline at end of file
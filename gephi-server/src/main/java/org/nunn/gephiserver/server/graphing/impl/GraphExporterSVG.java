@@ -1,21 +1,72 @@
 package org.nunn.gephiserver.server.graphing.impl;
 
-import org.gephi.io.exporter.preview.SVGExporter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.svg2svg.SVGTranscoder;
+import org.gephi.preview.api.PreviewProperties;
+import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.api.RenderTarget;
+import org.gephi.preview.api.SVGTarget;
+import org.gephi.project.api.Workspace;
 import org.nunn.gephiserver.server.graphing.GraphExporter;
-import org.nunn.gephiserver.server.system.StringBuilderWriter;
+import org.nunn.gephiserver.server.system.ByteChunkOutputStream;
 
-public class GraphExporterSVG implements GraphExporter<StringBuilderWriter> {
+/** SVG export, encoded to UTF-8 as it is transcoded, so output is held once, as bytes, and written on to responses as is. */
+public class GraphExporterSVG implements GraphExporter<ByteChunkOutputStream> {
 
+	/** As Gephi's SVGExporter defaults. */
+	private static final float MARGIN = 4f;
+	
 	/** Uses Gephi to lay out a network diagram.
-	 * @return SVG network diagram. */
+	 * Renders as Gephi's SVGExporter does, but see {@link GraphExporter#refreshPreview(Workspace)}.
+	 * @return SVG network diagram, UTF-8 encoded. */
 	@Override
-	public StringBuilderWriter export() {
-		SVGExporter svgExporter = (SVGExporter) EXPORT_CONTROLLER.getExporter("svg");
+	public ByteChunkOutputStream export(Workspace workspace) {
+		PreviewProperties props = GraphExporter.refreshPreview(workspace).getProperties();
+		props.putValue(SVGTarget.SCALE_STROKES, false);
+		props.putValue(PreviewProperty.MARGIN, MARGIN);
 		
-		StringBuilderWriter sbw = new StringBuilderWriter(8192);
-		EXPORT_CONTROLLER.exportWriter(sbw, svgExporter);
+		ByteChunkOutputStream svg = new ByteChunkOutputStream();
+		try {
+			SVGTarget target = (SVGTarget) PREVIEW_CONTROLLER.getRenderTarget(RenderTarget.SVG_TARGET, workspace);
+			PREVIEW_CONTROLLER.render(target, workspace);
+			
+			SVGTranscoder transcoder = new SVGTranscoder();
+			transcoder.addTranscodingHint(SVGTranscoder.KEY_XML_DECLARATION, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			Writer writer = new OutputStreamWriter(svg, StandardCharsets.UTF_8);
+			transcoder.transcode(new TranscoderInput(target.getDocument()), new TranscoderOutput(writer));
+			writer.flush();
+		}
+		catch (TranscoderException | IOException e) {
+			throw new RuntimeException("SVG export failed", e);
+		}
+		finally {
+			props.removeSimpleValue(SVGTarget.SCALE_STROKES);
+			props.removeSimpleValue(PreviewProperty.MARGIN);
+		}
 		
-		return sbw;
+		return svg;
+	}
+	
+	@Override
+	public byte[] toBytes(ByteChunkOutputStream output) {
+		return output.toByteArray();
+	}
+	
+	@Override
+	public ByteChunkOutputStream fromBytes(byte[] bytes) {
+		return new ByteChunkOutputStream(bytes);
+	}
+	
+	@Override
+	public long sizeOf(ByteChunkOutputStream output) {
+		return output.capacity();
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Parallel layout, with its force directed stage run multilevel, for graphs too large for any number of Yifan Hu iterations.
+ *
+ * The graph is coarsened by repeated heavy edge matching, each level merging pairs of neighbours of the level below, until few
+ * nodes are left or matching stops shrinking it. The coarsest level is laid out in full by {@link ParallelForceLayout}, then each
+ * finer level starts from its coarser level's positions and is only refined, by a few iterations. As levels shrink geometrically,
+ * the whole costs about as much as refining the full graph. Every level is laid out at a spring length giving it the same area.
+ * The stage's time is split between levels as they start, in proportion to their expected work, so that the finest levels, which
+ * the output shows, are always refined: the coarsest level may take at most a quarter of it, however large it is left.
+ *
+ * A warm start already has positions to refine, so skips coarsening and runs as the parallel layout does.
+ *
+ * @author Rob
+ */
+public class GraphLayoutMultilevel extends GraphLayoutParallel {
+
+	private static final Logger LOGGER = LogManager.getLogger(GraphLayoutMultilevel.class);
+
+	/** Coarsening stops at this many nodes or fewer. */
+	private static final int COARSEST_NODES = 100;
+	/** Coarsening stops once matching keeps more than this share of a level's nodes, e.g. around the hubs of a star. */
+	private static final float MAX_KEPT_SHARE = 0.8f;
+	/** Most iterations refining each level finer than the coarsest. */
+	private static final int REFINE_ITERATIONS = 30;
+	/** Most share of the stage's time the coarsest level may take. */
+	private static final float COARSEST_BUDGET_SHARE = 0.25f;
+	/** Most a node is offset from its coarse node's position, as a share of its level's spring length, so merged nodes do not coincide. */
+	private static final float PROLONG_JITTER = 0.1f;
+
+	@Override
+	protected boolean layoutForces(GraphArrays arrays, int maxIterations, boolean refine, long stageDeadline, Map<String, Object> feedback) throws InterruptedException {
+		if (refine) {
+			return super.layoutForces(arrays, maxIterations, refine, stageDeadline, feedback);
+		}
+		GraphArrays.Csr adjacency = arrays.undirected();
+		int[] nodeWeights = new int[arrays.nodeCount];
+		Arrays.fill(nodeWeights, 1);
+		Level finest = new Level(adjacency.offsets, adjacency.neighbours, adjacency.weights, nodeWeights, arrays.xs, arrays.ys);
+
+		List<Level> levels = new ArrayList<>();
+		levels.add(finest);
+		for (Level level = finest; level.nodeCount > COARSEST_NODES;) {
+			Level coarser = level.coarsen();
+			if (coarser.nodeCount > level.nodeCount * MAX_KEPT_SHARE) {
+				break;
+			}
+			levels.add(coarser);
+			level = coarser;
+		}
+		LOGGER.debug("Multilevel layout of {} levels, coarsest {} nodes", levels.size(), levels.get(levels.size() - 1).nodeCount);
+
+		// Expected work of each level, and of it and every finer level, by iterations over nodes and edges
+		int coarsest = levels.size() - 1;
+		double[] work = new double[levels.size()];
+		double[] workFrom = new double[levels.size()];
+		for (int l = 0; l <= coarsest; l++) {
+			Level level = levels.get(l);
+			work[l] = (double) (level.nodeCount + level.neighbours.length) * levelIterations(l == coarsest, maxIterations);
+			workFrom[l] = work[l] + (l > 0 ? workFrom[l - 1] : 0d);
+		}
+
+		Random random = new Random(arrays.nodeCount);
+		int count = 0;
+		boolean truncated = false;
+		Iterations iterations = null;
+		for (int l = coarsest; l >= 0; l--) {
+			Level level = levels.get(l);
+			float optimalDistance = OPTIMAL_DISTANCE * (float) Math.sqrt((double) finest.nodeCount / Math.max(1, level.nodeCount));
+			if (l < coarsest) {
+				level.prolong(levels.get(l + 1), optimalDistance * PROLONG_JITTER, random);
+			}
+			int levelIterations = levelIterations(l == coarsest, maxIterations);
+			double share = work[l] / workFrom[l];
+			long levelDeadline = levelDeadline(stageDeadline, l == coarsest && coarsest > 0 ? Math.min(share, COARSEST_BUDGET_SHARE) : share);
+			ParallelForceLayout layout = new ParallelForceLayout(forcePool(), level.xs, level.ys, level.offsets, level.neighbours, optimalDistance);
+			iterations = iterate(layout::canAlgo, layout::goAlgo, layout::getMovement, Math.min(yifanHuMinIterations, levelIterations),
+					levelIterations, levelDeadline, "during multilevel ParallelForceLayout");
+			count += iterations.count;
+			truncated |= iterations.truncated;
+		}
+
+		feedback.put("forceLevels", levels.size());
+		return new Iterations(count, iterations.converged, truncated).record(feedback, "force");
+	}
+
+	private int levelIterations(boolean coarsest, int maxIterations) {
+		return coarsest ? maxIterations : Math.min(REFINE_ITERATIONS, maxIterations);
+	}
+
+	/** @param share Share of the time left until the stage deadline to allow the level: levels starting earlier than expected,
+	 * as coarser ones converged, so get the time saved.
+	 * @return Time by which the level should stop. */
+	private static long levelDeadline(long stageDeadline, double share) {
+		if (stageDeadline == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		long now = System.currentTimeMillis();
+		return now + (long) (Math.max(0L, stageDeadline - now) * share);
+	}
+
+	/** One level of the coarsening: CSR adjacency with edge weights, the number of finest nodes each node stands for, and positions. */
+	private static final class Level {
+		private final int nodeCount;
+		private final int[] offsets;
+		private final int[] neighbours;
+		/** Summed weight of the finest edges each edge stands for, aligned with neighbours. */
+		private final float[] edgeWeights;
+		private final int[] nodeWeights;
+		private final float[] xs;
+		private final float[] ys;
+		/** Index of each node's node in the next coarser level, once coarsened. */
+		private int[] parents;
+
+		private Level(int[] offsets, int[] neighbours, float[] edgeWeights, int[] nodeWeights, float[] xs, float[] ys) {
+			this.nodeCount = nodeWeights.length;
+			this.offsets = offsets;
+			this.neighbours = neighbours;
+			this.edgeWeights = edgeWeights;
+			this.nodeWeights = nodeWeights;
+			this.xs = xs;
+			this.ys = ys;
+		}
+
+		/** Heavy edge matching: nodes in a seeded random order each merge with the unmatched neighbour sharing the most edge weight
+		 * for their node weights, so coarse nodes stay balanced. Coarse nodes start at their first member's position.
+		 * @return The next coarser level. */
+		private Level coarsen() {
+			int[] order = new int[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				order[i] = i;
+			}
+			Random random = new Random(nodeCount);
+			for (int i = nodeCount - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+
+			parents = new int[nodeCount];
+			Arrays.fill(parents, -1);
+			int[] firsts = new int[nodeCount];
+			int[] seconds = new int[nodeCount];
+			int coarseCount = 0;
+			for (int u : order) {
+				if (parents[u] >= 0) {
+					continue;
+				}
+				int best = -1;
+				double bestScore = Double.NEGATIVE_INFINITY;
+				for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+					int v = neighbours[e];
+					if (v != u && parents[v] < 0) {
+						double score = (double) edgeWeights[e] / ((long) nodeWeights[u] * nodeWeights[v]);
+						if (score > bestScore) {
+							bestScore = score;
+							best = v;
+						}
+					}
+				}
+				parents[u] = coarseCount;
+				if (best >= 0) {
+					parents[best] = coarseCount;
+				}
+				firsts[coarseCount] = u;
+				seconds[coarseCount] = best;
+				coarseCount++;
+			}
+
+			// Merge each coarse node's members' edges, summing the weights of edges to the same coarse node
+			int[] coarseOffsets = new int[coarseCount + 1];
+			int[] coarseNeighbours = new int[neighbours.length];
+			float[] coarseEdgeWeights = new float[neighbours.length];
+			int[] coarseNodeWeights = new int[coarseCount];
+			int[] marker = new int[coarseCount];
+			int[] slots = new int[coarseCount];
+			Arrays.fill(marker, -1);
+			int k = 0;
+			for (int c = 0; c < coarseCount; c++) {
+				coarseOffsets[c] = k;
+				for (int m = 0; m < 2; m++) {
+					int member = m == 0 ? firsts[c] : seconds[c];
+					if (member < 0) {
+						continue;
+					}
+					coarseNodeWeights[c] += nodeWeights[member];
+					for (int e = offsets[member], end = offsets[member + 1]; e < end; e++) {
+						int d = parents[neighbours[e]];
+						if (d == c) {
+							continue;
+						}
+						if (marker[d] != c) {
+							marker[d] = c;
+							slots[d] = k;
+							coarseNeighbours[k] = d;
+							coarseEdgeWeights[k] = edgeWeights[e];
+							k++;
+						}
+						else {
+							coarseEdgeWeights[slots[d]] += edgeWeights[e];
+						}
+					}
+				}
+			}
+			coarseOffsets[coarseCount] = k;
+
+			Level coarser = new Level(coarseOffsets, Arrays.copyOf(coarseNeighbours, k), Arrays.copyOf(coarseEdgeWeights, k), coarseNodeWeights,
+					new float[coarseCount], new float[coarseCount]);
+			for (int c = 0; c < coarseCount; c++) {
+				coarser.xs[c] = xs[firsts[c]];
+				coarser.ys[c] = ys[firsts[c]];
+			}
+			return coarser;
+		}
+
+		/** Place every node at its coarse node's laid out position, offset at random by up to jitter. */
+		private void prolong(Level coarser, float jitter, Random random) {
+			for (int i = 0; i < nodeCount; i++) {
+				xs[i] = coarser.xs[parents[i]] + (random.nextFloat() * 2f - 1f) * jitter;
+				ys[i] = coarser.ys[parents[i]] + (random.nextFloat() * 2f - 1f) * jitter;
+			}
+		}
+	}
+
+}
\ No newline at end of file
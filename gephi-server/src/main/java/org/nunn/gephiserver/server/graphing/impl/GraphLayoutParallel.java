@@ -0,0 +1,21 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Standard layout, with its force directed stage split across a ForkJoin pool rather than run on the job's thread.
+ * For graphs too large for one core to lay out within jobTimeout.
+ *
+ * The pool of layoutThreads threads, by default one per core, is shared by every job using this layout.
+ * The split of nodes between tasks is fixed, so the layout is the same as the standard layout's.
+ *
+ * @author Rob
+ */
+public class GraphLayoutParallel extends GraphLayoutStd {
+
+	@Override
+	protected ForkJoinPool forcePool() {
+		return GraphArrays.POOL;
+	}
+
+}
\ No newline at end of file
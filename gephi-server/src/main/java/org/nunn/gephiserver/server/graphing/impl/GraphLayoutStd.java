@@ -1,8 +1,23 @@
 package org.nunn.gephiserver.server.graphing.impl;
 
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,67 +31,157 @@ import org.gephi.appearance.plugin.RankingNodeSizeTransformer;
 import org.gephi.appearance.plugin.palette.Palette;
 import org.gephi.graph.api.Column;
 import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
-import org.gephi.layout.plugin.force.StepDisplacement;
-import org.gephi.layout.plugin.force.yifanHu.YifanHuLayout;
-import org.gephi.layout.plugin.labelAdjust.LabelAdjust;
+import org.gephi.graph.api.Node;
 import org.gephi.preview.api.PreviewController;
 import org.gephi.preview.api.PreviewModel;
 import org.gephi.preview.api.PreviewProperty;
 import org.gephi.preview.types.DependantColor;
+import org.gephi.project.api.Workspace;
 import org.gephi.statistics.plugin.GraphDistance;
 import org.gephi.statistics.plugin.Modularity;
+import org.nunn.gephiserver.server.Props;
 import org.nunn.gephiserver.server.graphing.GraphLayout;
+import org.nunn.gephiserver.server.graphing.GraphMetrics;
+import org.nunn.gephiserver.server.graphing.GraphPositionStore;
+import org.nunn.gephiserver.server.graphing.GraphPositionStore.Positions;
+import org.nunn.gephiserver.server.system.LruCache;
 import org.openide.util.Lookup;
 
+/**
+ * Standard layout: Yifan Hu, node size ranked by betweenness centrality, colour partitioned by modularity class, then label overlap removal.
+ *
+ * The graph is read into primitive arrays once, see {@link GraphArrays}, which every stage but modularity and appearance works on.
+ * Yifan Hu runs there as {@link ParallelForceLayout}, on the job's thread, and positions are written to the nodes once, after label
+ * overlap removal.
+ *
+ * With layoutPositionDir set, each finished layout's node positions are kept per layout key, and later layouts of the key start from them:
+ * an unchanged graph then skips Yifan Hu, and one mostly unchanged only refines, with new nodes placed among their neighbours.
+ * Positions of an unchanged graph are not rewritten, only marked used, and at most layoutPositionMaxFiles layouts are kept.
+ *
+ * Betweenness and modularity class are kept in a statistics cache bounded by statisticsCacheBytes, shared by every layout in the JVM.
+ * Betweenness is keyed by a fingerprint of the graph's nodes and edges, modularity class, which uses edge weights, by one including
+ * the weights. Renders of an unchanged graph reapply the kept values, and rooty renders, which change only weights, keep betweenness.
+ *
+ * @author Rob
+ */
 public class GraphLayoutStd implements GraphLayout {
 
 	private static final Logger LOGGER = LogManager.getLogger(GraphLayoutStd.class);
 	
+	/** Default most Yifan Hu iterations, see yifanHuMaxIterations. */
+	protected static final int YIFAN_HU_ITERATIONS = 200;
+	/** Yifan Hu's natural spring length. */
+	protected static final float OPTIMAL_DISTANCE = 250f;
+	/** Yifan Hu iterations for a warm start, refining kept positions rather than laying out from scratch. */
+	private static final int YIFAN_HU_REFINE_ITERATIONS = 20;
+	/** Yifan Hu's first step when refining, as a share of the optimal distance: a tenth of the step laying out from scratch. */
+	private static final float YIFAN_HU_REFINE_STEP = 0.02f;
+	/** Share of nodes that must have kept positions for a warm start. */
+	private static final float WARM_START_SHARE = 0.5f;
+	/** Most a node new since the kept layout is offset from the centre of its neighbours, so new nodes do not coincide. */
+	private static final float NEW_NODE_JITTER = 25f;
+	/** Default most label adjust iterations, see labelAdjustMaxIterations. */
+	private static final int LABEL_ADJUST_ITERATIONS = 100;
+	/** Share of the budget left until the job deadline that Yifan Hu may use: statistics, label adjust and export follow it. */
+	private static final float YIFAN_HU_BUDGET_SHARE = 0.5f;
+	/** Share of the budget then left that label adjust may use: export follows it. */
+	private static final float LABEL_ADJUST_BUDGET_SHARE = 0.5f;
+	/** Node label font, as Preview's default, measured to size label boxes. Labels are not scaled by node size. */
+	private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 12);
+	/** Space kept clear around each label box. */
+	private static final float LABEL_PADDING = 2f;
+	
+	/** Per node statistics of recent graphs, or null if statisticsCacheBytes is 0. */
+	private static final LruCache<List<Object>, NodeValues> STATISTICS_CACHE = statisticsCache();
+	
 	private final GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
 	private final AppearanceController appearanceController = Lookup.getDefault().lookup(AppearanceController.class);
 	private final PreviewController previewController = Lookup.getDefault().lookup(PreviewController.class);
+	/** Kept node positions, or null if not configured. */
+	private final GraphPositionStore positionStore;
+	/** Iterative stages run at least their min iterations, then stop once converged, or at their max iterations.
+	 * Yifan Hu refining kept positions has no min iterations: those are already settled, so may converge at once. */
+	protected final int yifanHuMinIterations;
+	protected final int yifanHuMaxIterations;
+	protected final int labelAdjustMinIterations;
+	protected final int labelAdjustMaxIterations;
+	/** An iteration moving nodes on average less than this share of the layout's extent leaves the stage converged. */
+	protected final double convergence;
+	/** Error bound of sampled betweenness, or 0 for exact betweenness from every source. */
+	private final double betweennessError;
+	
+	public GraphLayoutStd() {
+		String positionDir = Props.INSTANCE.getPropertyAsString("layoutPositionDir", "");
+		positionStore = ! positionDir.isEmpty()
+				? new GraphPositionStore(Paths.get(positionDir), Props.INSTANCE.getPropertyAsInteger("layoutPositionMaxFiles", 10000)) : null;
+		yifanHuMinIterations = Props.INSTANCE.getPropertyAsInteger("yifanHuMinIterations", 10);
+		yifanHuMaxIterations = Props.INSTANCE.getPropertyAsInteger("yifanHuMaxIterations", YIFAN_HU_ITERATIONS);
+		labelAdjustMinIterations = Props.INSTANCE.getPropertyAsInteger("labelAdjustMinIterations", 1);
+		labelAdjustMaxIterations = Props.INSTANCE.getPropertyAsInteger("labelAdjustMaxIterations", LABEL_ADJUST_ITERATIONS);
+		convergence = Props.INSTANCE.getPropertyAs(Double.class, "layoutConvergence", () -> 0.005d);
+		betweennessError = Props.INSTANCE.getPropertyAs(Double.class, "betweennessError", () -> 0.05d);
+	}
+
+	@Override
+	public Map<String, Object> processGraph(Workspace workspace, long deadline) throws InterruptedException {
+		return processGraph(workspace, deadline, null);
+	}
 
 	@Override
-	public Map<String, Object> processGraph() throws InterruptedException {
+	public Map<String, Object> processGraph(Workspace workspace, long deadline, String layoutKey) throws InterruptedException {
 		LOGGER.debug("Gephi: Processing graph");
 
 		Map<String, Object> feedback = new HashMap<>();
 
-		GraphModel graphModel = graphController.getGraphModel();
-		AppearanceModel appearanceModel = appearanceController.getModel();
+		GraphModel graphModel = graphController.getGraphModel(workspace);
+		AppearanceModel appearanceModel = appearanceController.getModel(workspace);
 		DirectedGraph graph = graphModel.getDirectedGraph();
 
-		// YifanHuLayout layout gives a cloud effect
-		YifanHuLayout yifanHuLayout = new YifanHuLayout(null, new StepDisplacement(1f));
-		yifanHuLayout.setGraphModel(graphModel);
-		yifanHuLayout.resetPropertiesValues();
-		yifanHuLayout.setOptimalDistance(250f);
-		for (int i = 0; i < 100 && yifanHuLayout.canAlgo(); i++) {
-			yifanHuLayout.goAlgo();
-			checkInterrupted("during YifanHuLayout");
-		}
+		long stageStarted = System.currentTimeMillis();
+		boolean keepPositions = positionStore != null && layoutKey != null;
+		long fingerprint = keepPositions || STATISTICS_CACHE != null ? fingerprint(graph, true) : 0L;
+		Positions kept = keepPositions ? warmStart(graph, layoutKey, feedback) : null;
+		int yifanHuIterations = yifanHuIterations(kept, fingerprint);
+		GraphMetrics.stage("layout_warm_start", stageStarted);
+		
+		GraphArrays arrays = new GraphArrays(graphModel.getGraphVisible());
+		
+		stageStarted = System.currentTimeMillis();
+		boolean forcesDone = layoutForces(arrays, yifanHuIterations, kept != null, stageDeadline(deadline, YIFAN_HU_BUDGET_SHARE), feedback);
+		GraphMetrics.stage("layout_forces", stageStarted);
 		
 		//Get Centrality
-		GraphDistance distance = new GraphDistance();
-		distance.setDirected(true);
-		distance.execute(graphModel);
-		Column centralityColumn = graphModel.getNodeTable().getColumn(GraphDistance.BETWEENNESS);
-		checkInterrupted("after GraphDistance");
+		stageStarted = System.currentTimeMillis();
+		List<Object> centralityKey = STATISTICS_CACHE != null ? Arrays.asList(GraphDistance.BETWEENNESS, fingerprint(graph, false), betweennessError) : null;
+		Column centralityColumn = restoreStatistic(graphModel, centralityKey);
+		if (centralityColumn == null) {
+			centralityColumn = computeCentrality(graphModel, arrays);
+			keepStatistic(graphModel, centralityColumn, centralityKey);
+		}
+		GraphMetrics.stage("layout_centrality", stageStarted);
+		checkInterrupted("after SampledBetweenness");
 
 		//Rank size by centrality
 		Function func = appearanceModel.getNodeFunction(graph, centralityColumn, RankingNodeSizeTransformer.class);
 		RankingNodeSizeTransformer centralityTransformer = (RankingNodeSizeTransformer) func.getTransformer();
 		centralityTransformer.setMinSize(4);
 		centralityTransformer.setMaxSize(20);
-		appearanceController.transform(func);
+		transform(func, graphModel);
 		checkInterrupted("after RankingNodeSizeTransformer");
 
 		// Modularity algorithm - community detection
-		Modularity modularity = new Modularity();
-		modularity.execute(graphModel);
-		Column modColumn = graphModel.getNodeTable().getColumn(Modularity.MODULARITY_CLASS);
+		stageStarted = System.currentTimeMillis();
+		List<Object> modKey = STATISTICS_CACHE != null ? Arrays.asList(Modularity.MODULARITY_CLASS, fingerprint) : null;
+		Column modColumn = restoreStatistic(graphModel, modKey);
+		if (modColumn == null) {
+			modColumn = computeCommunities(graphModel);
+			keepStatistic(graphModel, modColumn, modKey);
+		}
+		GraphMetrics.stage("layout_modularity", stageStarted);
 		checkInterrupted("after Modularity");
 
 		// Partition by the column just created by Modularity algorithm
@@ -84,25 +189,30 @@ public class GraphLayoutStd implements GraphLayout {
 		Partition partition = ((PartitionFunction) func).getPartition();
 		Palette palette = randomPalette(partition.size());
 		partition.setColors(palette.getColors());
-		appearanceController.transform(func);
+		transform(func, graphModel);
 		checkInterrupted("after PartitionElementColorTransformer");
 
 		// space out nodes to prevent text labels overlapping
-		LabelAdjust labelAdjust = new LabelAdjust(null);
-		labelAdjust.setGraphModel(graphModel);
-		labelAdjust.resetPropertiesValues();
-		labelAdjust.setAdjustBySize(true);
-		labelAdjust.setSpeed(8.0d);
-		labelAdjust.initAlgo();
-		for (int i = 0; i < 40 && labelAdjust.canAlgo(); i++) {
-			labelAdjust.goAlgo();
-			checkInterrupted("during LabelAdjust");
+		stageStarted = System.currentTimeMillis();
+		boolean labelsDone = adjustLabels(arrays, stageDeadline(deadline, LABEL_ADJUST_BUDGET_SHARE), feedback);
+		GraphMetrics.stage("layout_label_adjust", stageStarted);
+		arrays.writePositions();
+		
+		boolean truncated = ! forcesDone || ! labelsDone;
+		feedback.put(TRUNCATED, truncated);
+		if (truncated) {
+			LOGGER.info("Layout cut short to meet deadline: {} of {} force, {} of {} label adjust iterations",
+					feedback.get("forceIterations"), yifanHuIterations, feedback.get("labelAdjustIterations"), labelAdjustMaxIterations);
+		}
+		if (keepPositions) {
+			keepPositions(graph, layoutKey, fingerprint, ! truncated, kept != null && yifanHuIterations == 0);
 		}
 
 		//Set 'show labels' option in Preview - and disable node size influence on text size
-		PreviewModel previewModel = previewController.getModel();
+		PreviewModel previewModel = previewController.getModel(workspace);
 		previewModel.getProperties().putValue(PreviewProperty.SHOW_NODE_LABELS, Boolean.TRUE);
 		previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_PROPORTIONAL_SIZE, Boolean.FALSE);
+		previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_FONT, LABEL_FONT);
 		previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_OUTLINE_COLOR, new DependantColor(Color.WHITE));
 		previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_OUTLINE_SIZE, 8);
 		previewModel.getProperties().putValue(PreviewProperty.EDGE_OPACITY, 50);
@@ -111,6 +221,377 @@ public class GraphLayoutStd implements GraphLayout {
 		return feedback;
 	}
 
+	/** Start from the kept positions of the layout key's last layout, if any.
+	 * @param feedback Receives the number of nodes placed at kept positions.
+	 * @return The kept positions if enough nodes were placed at them to only refine the layout, else null to lay out from scratch. */
+	private Positions warmStart(DirectedGraph graph, String layoutKey, Map<String, Object> feedback) {
+		Positions positions;
+		try {
+			positions = positionStore.read(layoutKey);
+		}
+		catch (IOException e) {
+			LOGGER.warn("Could not read kept layout positions of {}", layoutKey, e);
+			positions = null;
+		}
+		if (positions == null) {
+			feedback.put("seededNodes", 0);
+			return null;
+		}
+		
+		int seeded = seedPositions(graph, positions);
+		feedback.put("seededNodes", seeded);
+		return seeded >= graph.getNodeCount() * WARM_START_SHARE ? positions : null;
+	}
+	
+	/** @param kept Positions of a warm start, or null to lay out from scratch.
+	 * @return Yifan Hu iterations to run: none for an unchanged graph whose last layout completed, few for a warm start, else all. */
+	private int yifanHuIterations(Positions kept, long fingerprint) {
+		if (kept == null) {
+			return yifanHuMaxIterations;
+		}
+		return kept.fingerprint == fingerprint && kept.complete ? 0 : Math.min(YIFAN_HU_REFINE_ITERATIONS, yifanHuMaxIterations);
+	}
+	
+	/** Place nodes at their kept positions. Nodes without one are placed near the centre of their neighbours that have one,
+	 * or if none do, left where import put them.
+	 * @return Number of nodes placed at kept positions. */
+	private int seedPositions(Graph graph, Positions positions) {
+		Map<String, Integer> indexes = new HashMap<>(positions.ids.length * 2);
+		for (int i = 0; i < positions.ids.length; i++) {
+			indexes.put(positions.ids[i], i);
+		}
+		
+		Set<Node> unplaced = new HashSet<>();
+		for (Node node : graph.getNodes()) {
+			Integer index = indexes.get(String.valueOf(node.getId()));
+			if (index != null) {
+				node.setX(positions.xs[index]);
+				node.setY(positions.ys[index]);
+			}
+			else {
+				unplaced.add(node);
+			}
+		}
+		
+		int seeded = graph.getNodeCount() - unplaced.size();
+		if (seeded > 0) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (Node node : unplaced) {
+				float x = 0f;
+				float y = 0f;
+				int placed = 0;
+				for (Node neighbour : graph.getNeighbors(node)) {
+					if ( ! unplaced.contains(neighbour)) {
+						x += neighbour.x();
+						y += neighbour.y();
+						placed++;
+					}
+				}
+				if (placed > 0) {
+					node.setX(x / placed + (random.nextFloat() * 2f - 1f) * NEW_NODE_JITTER);
+					node.setY(y / placed + (random.nextFloat() * 2f - 1f) * NEW_NODE_JITTER);
+				}
+			}
+		}
+		return seeded;
+	}
+	
+	/** Keep every node's final position under the layout key, for later layouts to start from.
+	 * @param unchanged Whether the kept positions were of this graph, complete, so Yifan Hu did not run: they are then only marked used. */
+	private void keepPositions(Graph graph, String layoutKey, long fingerprint, boolean complete, boolean unchanged) {
+		if (unchanged) {
+			try {
+				positionStore.touch(layoutKey);
+			}
+			catch (IOException e) {
+				LOGGER.warn("Could not mark layout positions of {} used", layoutKey, e);
+			}
+			return;
+		}
+		List<Node> nodes = new ArrayList<>(graph.getNodeCount());
+		for (Node node : graph.getNodes()) {
+			nodes.add(node);
+		}
+		String[] ids = new String[nodes.size()];
+		float[] xs = new float[nodes.size()];
+		float[] ys = new float[nodes.size()];
+		for (int i = 0; i < ids.length; i++) {
+			Node node = nodes.get(i);
+			ids[i] = String.valueOf(node.getId());
+			xs[i] = node.x();
+			ys[i] = node.y();
+		}
+		try {
+			positionStore.write(layoutKey, new Positions(fingerprint, complete, ids, xs, ys));
+		}
+		catch (IOException e) {
+			LOGGER.warn("Could not keep layout positions of {}", layoutKey, e);
+		}
+	}
+	
+	/** @param weights Whether edge weights count, so that a change of weight alone changes the hash.
+	 * @return Hash of the graph's node ids and edges, independent of their order, to tell whether a graph has changed. */
+	private static long fingerprint(Graph graph, boolean weights) {
+		long hash = graph.getNodeCount() * 0x9E3779B97F4A7C15L + graph.getEdgeCount();
+		for (Node node : graph.getNodes()) {
+			hash += mix(node.getId().hashCode());
+		}
+		for (Edge edge : graph.getEdges()) {
+			long endpoints = (long) edge.getSource().getId().hashCode() << 32 | edge.getTarget().getId().hashCode() & 0xFFFFFFFFL;
+			hash += mix(mix(endpoints) ^ (weights ? Double.doubleToLongBits(edge.getWeight()) : 0L));
+		}
+		return hash;
+	}
+	
+	/** SplitMix64 finaliser, spreading a value's bits over the whole hash. */
+	private static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	private static LruCache<List<Object>, NodeValues> statisticsCache() {
+		long statisticsCacheBytes = Props.INSTANCE.getPropertyAsLong("statisticsCacheBytes", 16L * 1024 * 1024);
+		return statisticsCacheBytes > 0 ? new LruCache<>(statisticsCacheBytes) : null;
+	}
+	
+	/** @return Statistics cache counters, or an empty map if the cache is disabled. */
+	public static Map<String, Long> getStatisticsCacheStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		if (STATISTICS_CACHE != null) {
+			stats.put("hits", STATISTICS_CACHE.getHits());
+			stats.put("misses", STATISTICS_CACHE.getMisses());
+			stats.put("evictions", STATISTICS_CACHE.getEvictions());
+			stats.put("entries", (long) STATISTICS_CACHE.size());
+			stats.put("bytes", STATISTICS_CACHE.getWeight());
+			stats.put("maxBytes", STATISTICS_CACHE.getMaxWeight());
+		}
+		return stats;
+	}
+	
+	/** Set a statistic's kept values on the graph's nodes, adding its column if need be.
+	 * @param key Statistics cache key, or null if the cache is disabled.
+	 * @return The statistic's column, or null if no values are kept under the key. */
+	private Column restoreStatistic(GraphModel graphModel, List<Object> key) {
+		NodeValues values = key != null ? STATISTICS_CACHE.get(key) : null;
+		if (values == null) {
+			return null;
+		}
+		Column column = graphModel.getNodeTable().getColumn(values.columnId);
+		if (column == null) {
+			column = graphModel.getNodeTable().addColumn(values.columnId, values.columnTitle, values.columnType, values.columnDefault);
+		}
+		Graph graph = graphModel.getGraphVisible();
+		for (int i = 0; i < values.ids.length; i++) {
+			Node node = graph.getNode(values.ids[i]);
+			if (node != null) {
+				node.setAttribute(column, values.values[i]);
+			}
+		}
+		LOGGER.debug("Statistic {} restored for {} nodes", values.columnId, values.ids.length);
+		return column;
+	}
+	
+	/** Keep a statistic's values, just computed, for later renders of the same graph.
+	 * @param key Statistics cache key, or null if the cache is disabled. */
+	private void keepStatistic(GraphModel graphModel, Column column, List<Object> key) {
+		if (key != null && column != null) {
+			NodeValues values = new NodeValues(graphModel.getGraphVisible(), column);
+			STATISTICS_CACHE.put(key, values, values.sizeOf());
+		}
+	}
+	
+	/** One node column's values, by node id. */
+	private static final class NodeValues {
+		private static final long STRING_BYTES = 40L;
+		private static final long VALUE_BYTES = 16L;
+		
+		private final String columnId;
+		private final String columnTitle;
+		private final Class<?> columnType;
+		private final Object columnDefault;
+		private final Object[] ids;
+		private final Object[] values;
+		
+		private NodeValues(Graph graph, Column column) {
+			columnId = column.getId();
+			columnTitle = column.getTitle();
+			columnType = column.getTypeClass();
+			columnDefault = column.getDefaultValue();
+			Node[] nodes = graph.getNodes().toArray();
+			ids = new Object[nodes.length];
+			values = new Object[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				ids[i] = nodes[i].getId();
+				values[i] = nodes[i].getAttribute(column);
+			}
+		}
+		
+		/** @return Estimated heap size in bytes: ids as strings, values as boxed numbers. */
+		private long sizeOf() {
+			long size = 64L + ids.length * (8L + VALUE_BYTES);
+			for (Object id : ids) {
+				size += STRING_BYTES + (id instanceof String ? ((String) id).length() * 2L : 0);
+			}
+			return size;
+		}
+	}
+	
+	/** Force directed layout stage: Yifan Hu gives a cloud effect. Moves the arrays' positions.
+	 * @param maxIterations Iterations to run at most, none leaving nodes where they are.
+	 * @param refine Whether the positions are kept ones, only to refine: the layout then starts at a small step and may stop at once.
+	 * @param stageDeadline Time by which the stage should stop, Long.MAX_VALUE for none.
+	 * @param feedback Receives the number of iterations run, and whether they converged.
+	 * @return False if the stage was cut short by its deadline. */
+	protected boolean layoutForces(GraphArrays arrays, int maxIterations, boolean refine, long stageDeadline, Map<String, Object> feedback) throws InterruptedException {
+		GraphArrays.Csr adjacency = arrays.undirected();
+		ParallelForceLayout layout = refine
+				? new ParallelForceLayout(forcePool(), arrays.xs, arrays.ys, adjacency.offsets, adjacency.neighbours, OPTIMAL_DISTANCE,
+						OPTIMAL_DISTANCE * YIFAN_HU_REFINE_STEP)
+				: new ParallelForceLayout(forcePool(), arrays.xs, arrays.ys, adjacency.offsets, adjacency.neighbours, OPTIMAL_DISTANCE);
+		Iterations iterations = iterate(layout::canAlgo, layout::goAlgo, layout::getMovement, refine ? 0 : Math.min(yifanHuMinIterations, maxIterations),
+				maxIterations, stageDeadline, "during ParallelForceLayout");
+		return iterations.record(feedback, "force");
+	}
+	
+	/** @return Pool to accumulate forces across, or null for the job's thread. */
+	protected ForkJoinPool forcePool() {
+		return null;
+	}
+	
+	/** Centrality statistic stage. Computes betweenness alone, the only distance statistic the layout shows, estimated from
+	 * a sample of sources unless betweennessError is 0, see {@link SampledBetweenness}. Only its column is added to the node table.
+	 * @return Node column holding betweenness centrality, under GraphDistance's id. */
+	protected Column computeCentrality(GraphModel graphModel, GraphArrays arrays) {
+		SampledBetweenness sampled = new SampledBetweenness(arrays);
+		int samples = betweennessError > 0d ? sampled.sampleSize(betweennessError) : arrays.nodeCount;
+		double[] betweenness = sampled.compute(samples);
+			
+		Column column = graphModel.getNodeTable().getColumn(GraphDistance.BETWEENNESS);
+		if (column == null) {
+			column = graphModel.getNodeTable().addColumn(GraphDistance.BETWEENNESS, "Betweenness Centrality", Double.class, 0d);
+		}
+		for (int i = 0; i < arrays.nodeCount; i++) {
+			arrays.nodes[i].setAttribute(column, betweenness[i]);
+		}
+		LOGGER.debug("Betweenness from {} of {} sources", samples, arrays.nodeCount);
+		return column;
+	}
+	
+	/** Community detection stage.
+	 * @return Node column holding modularity class. */
+	protected Column computeCommunities(GraphModel graphModel) {
+		Modularity modularity = new Modularity();
+		modularity.execute(graphModel);
+		return graphModel.getNodeTable().getColumn(Modularity.MODULARITY_CLASS);
+	}
+	
+	/** Label overlap removal stage, spacing out nodes by their label and size, see {@link LabelOverlapRemoval}.
+	 * Stops once no labels overlap. Moves the arrays' positions, reading node sizes, as ranked, and labels from the nodes.
+	 * @param stageDeadline Time by which the stage should stop, Long.MAX_VALUE for none.
+	 * @param feedback Receives the number of iterations run, and whether they converged.
+	 * @return False if the stage was cut short by its deadline. */
+	protected boolean adjustLabels(GraphArrays arrays, long stageDeadline, Map<String, Object> feedback) throws InterruptedException {
+		Node[] nodes = arrays.nodes;
+		float[] halfWidths = new float[nodes.length];
+		float[] halfHeights = new float[nodes.length];
+		FontRenderContext fontContext = new FontRenderContext(null, true, true);
+		for (int i = 0; i < nodes.length; i++) {
+			float radius = nodes[i].size() / 2f;
+			String label = nodes[i].getLabel();
+			if (label != null && ! label.isEmpty()) {
+				Rectangle2D bounds = LABEL_FONT.getStringBounds(label, fontContext);
+				halfWidths[i] = Math.max(radius, (float) bounds.getWidth() / 2f) + LABEL_PADDING;
+				halfHeights[i] = Math.max(radius, (float) bounds.getHeight() / 2f) + LABEL_PADDING;
+			}
+			else {
+				halfWidths[i] = radius + LABEL_PADDING;
+				halfHeights[i] = radius + LABEL_PADDING;
+			}
+		}
+		
+		// Converged only once no labels overlap: pushes are small against the layout's extent long before then
+		LabelOverlapRemoval removal = new LabelOverlapRemoval(arrays.xs, arrays.ys, halfWidths, halfHeights);
+		Iterations iterations = iterate(removal::canAlgo, removal::goAlgo, () -> Double.POSITIVE_INFINITY, labelAdjustMinIterations,
+				labelAdjustMaxIterations, stageDeadline, "during LabelOverlapRemoval");
+		feedback.put("labelOverlaps", removal.getOverlaps());
+		return iterations.record(feedback, "labelAdjust");
+	}
+
+	/** Outcome of running an iterative stage. */
+	protected static final class Iterations {
+		protected final int count;
+		/** Whether the stage stopped as converged: by our measure, or the layout's own. */
+		protected final boolean converged;
+		/** Whether the stage stopped for its deadline. */
+		protected final boolean truncated;
+
+		Iterations(int count, boolean converged, boolean truncated) {
+			this.count = count;
+			this.converged = converged;
+			this.truncated = truncated;
+		}
+
+		/** Put the iteration count and convergence in the feedback, under keys prefixed by the stage name.
+		 * @return False if the stage was cut short by its deadline. */
+		protected boolean record(Map<String, Object> feedback, String stage) {
+			feedback.put(stage + "Iterations", count);
+			feedback.put(stage + "Converged", converged);
+			return ! truncated;
+		}
+	}
+
+	/** Run an iterative layout until done, converged, out of iterations, or the next iteration would likely overrun the stage deadline.
+	 * The last iteration's duration is taken as the estimate of the next's.
+	 * @param canAlgo Whether the layout has more to do; false counts as converged.
+	 * @param goAlgo Runs one iteration.
+	 * @param movement Measures the iteration just run: nodes' mean displacement as a share of the layout's extent.
+	 * Once at least minIterations have run, an iteration measuring under {@link #convergence} stops the stage. */
+	protected Iterations iterate(BooleanSupplier canAlgo, Runnable goAlgo, DoubleSupplier movement, int minIterations, int maxIterations,
+			long stageDeadline, String msg) throws InterruptedException {
+		long iterationMillis = 0L;
+		int i = 0;
+		while (i < maxIterations) {
+			if ( ! canAlgo.getAsBoolean()) {
+				return new Iterations(i, true, false);
+			}
+			long iterationStart = System.currentTimeMillis();
+			if (iterationStart + iterationMillis > stageDeadline) {
+				return new Iterations(i, false, true);
+			}
+			goAlgo.run();
+			checkInterrupted(msg);
+			i++;
+			if (movement.getAsDouble() < convergence && i >= minIterations) {
+				return new Iterations(i, true, false);
+			}
+			iterationMillis = System.currentTimeMillis() - iterationStart;
+		}
+		return new Iterations(i, ! canAlgo.getAsBoolean(), false);
+	}
+	
+	/** @param deadline Job deadline, Long.MAX_VALUE for none.
+	 * @param share Share of the time left until the job deadline to allow the stage.
+	 * @return Time by which the stage should stop. */
+	private long stageDeadline(long deadline, float share) {
+		if (deadline == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		long now = System.currentTimeMillis();
+		return now + (long) (Math.max(0L, deadline - now) * share);
+	}
+
+	/** Equivalent of AppearanceController.transform(func), which always applies to the current workspace's model.
+	 * @param func Node function to apply.
+	 * @param graphModel The model the function was created against. */
+	private void transform(Function func, GraphModel graphModel) {
+		Graph graph = graphModel.getGraphVisible();
+		for (Node node : graph.getNodes()) {
+			func.transform(node, graph);
+		}
+	}
+
 	/** Following method replaces usage of gephi's PaletteManager.getInstance().randomPalette(colorCount),
 	 * as using it trashes the JVM class loading...
 	 * 
@@ -1,13 +1,12 @@
 package org.nunn.gephiserver.server.graphing.impl;
 
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.Map;
 
 import org.gephi.io.importer.api.ContainerLoader;
-import org.gephi.io.importer.api.EdgeDraft;
 import org.gephi.io.importer.api.ElementDraft;
+import org.gephi.io.importer.api.NodeDraft;
 import org.nunn.gephiserver.server.graphing.GraphDataSource;
+import org.nunn.gephiserver.server.graphing.GraphSnapshot;
 
 public class GraphLogicRootNode extends GraphLogicStd {
 	
@@ -16,29 +15,23 @@ public class GraphLogicRootNode extends GraphLogicStd {
 	}
 
 	@Override
-	protected void addEdges(Integer graphId, Connection con, ContainerLoader cl, Map<String, Object> graphParam) throws SQLException {
-		final Integer rootNodeId = (Integer) graphParam.get("rootNodeId");
-		final Float upweight = (Float) graphParam.get("up_weight");
-		final Float downweight = (Float) graphParam.get("down_weight");
+	protected void addEdges(GraphSnapshot snapshot, ContainerLoader cl, Map<String, Object> graphParam, NodeDraft[] nodes) {
+		final int rootNodeId = (Integer) graphParam.get("rootNodeId");
+		final float upweight = (Float) graphParam.get("up_weight");
+		final float downweight = (Float) graphParam.get("down_weight");
 		final ElementDraft.Factory elementDraftFactory = cl.factory();
 		
-		graphDataSource.populateEdgesForGraph(con, graphId, (num, source, target, val) -> {
-			if (rootNodeId.equals(source) || rootNodeId.equals(target)) {
+		for (int i = 0; i < snapshot.getEdgeCount(); i++) {
+			float val = snapshot.getEdgeVal(i);
+			if (rootNodeId == snapshot.getEdgeSource(i) || rootNodeId == snapshot.getEdgeTarget(i)) {
 				val *= upweight;
 			}
 			else {
 				val *= downweight;
 			}
 			
-			EdgeDraft ed = elementDraftFactory.newEdgeDraft(num.toString());
-			ed.setSource(cl.getNode(source.toString()));
-			ed.setTarget(cl.getNode(target.toString()));
-			ed.setWeight(val.floatValue());
-			
-			cl.addEdge(ed);
-			
-			return true;
-		});
+			addEdge(snapshot, cl, elementDraftFactory, nodes, i, val);
+		}
 	}
 
 }
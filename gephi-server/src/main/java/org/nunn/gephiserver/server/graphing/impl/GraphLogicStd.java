@@ -1,6 +1,5 @@
 package org.nunn.gephiserver.server.graphing.impl;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -16,6 +15,7 @@ import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.io.importer.api.Report;
 import org.nunn.gephiserver.server.graphing.GraphDataSource;
 import org.nunn.gephiserver.server.graphing.GraphLogic;
+import org.nunn.gephiserver.server.graphing.GraphSnapshot;
 import org.openide.util.Lookup;
 
 public class GraphLogicStd implements GraphLogic {
@@ -31,7 +31,7 @@ public class GraphLogicStd implements GraphLogic {
 	}
 	
 	@Override
-	public Container create(Integer graphId, Map<String, Object> extraParam) {
+	public Container create(Integer graphId, String graphVersion, Map<String, Object> extraParam) {
 		LOGGER.debug("Gephi: Setup container, nodes and edges.");
 		
 		Report report = new Report();
@@ -39,8 +39,10 @@ public class GraphLogicStd implements GraphLogic {
 		Container container = CONTAINER_FACTORY.newContainer();
 		container.setReport(report);
 		
-		try (Connection con = graphDataSource.getConnection()) {
-			Map<String, Object> graphParam = graphDataSource.getGraphByID(con, graphId);
+		try {
+			GraphSnapshot snapshot = graphDataSource.getGraphSnapshot(graphId, graphVersion);
+			
+			Map<String, Object> graphParam = snapshot.getGraph();
 			graphParam.putAll(extraParam);
 			
 			ContainerLoader cl = container.getLoader();
@@ -50,8 +52,8 @@ public class GraphLogicStd implements GraphLogic {
 			cl.addNodeColumn(KEY_URL, String.class);
 			cl.addNodeColumn(KEY_TAG, String[].class);
 			
-			addNodes(graphId, con, cl, graphParam);
-			addEdges(graphId, con, cl, graphParam);
+			NodeDraft[] nodes = addNodes(snapshot, cl, graphParam);
+			addEdges(snapshot, cl, graphParam, nodes);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -76,39 +78,63 @@ public class GraphLogicStd implements GraphLogic {
 		}
 	}
 	
-	protected void addNodes(Integer graphId, Connection con, ContainerLoader cl, Map<String, Object> graphParam) throws SQLException {
+	/** @return Node drafts added, by snapshot node row index, for {@link #addEdge} to connect. */
+	protected NodeDraft[] addNodes(GraphSnapshot snapshot, ContainerLoader cl, Map<String, Object> graphParam) {
 		String urlbaseTmp = (String) graphParam.get("url_base");
 		
 		final ElementDraft.Factory elementDraftFactory = cl.factory();
 		final String urlbase = urlbaseTmp == null ? "/" : urlbaseTmp;
 		
-		graphDataSource.populateNodesForGraph(con, graphId, (num, name, tag) -> {
-			String[] tags = tag != null ? TAG_SPLITTER.split(tag) : new String[]{};
+		// Split each distinct tag once: nodes sharing a tag share its array
+		String[][] splitTags = new String[snapshot.getTagCount()][];
+		String[] noTags = new String[]{};
+			
+		NodeDraft[] nodes = new NodeDraft[snapshot.getNodeCount()];
+		for (int i = 0; i < nodes.length; i++) {
+			int num = snapshot.getNodeNum(i);
+			int tagCode = snapshot.getNodeTagCode(i);
+			String[] tags = noTags;
+			if (tagCode >= 0) {
+				tags = splitTags[tagCode];
+				if (tags == null) {
+					tags = splitTags[tagCode] = TAG_SPLITTER.split(snapshot.getTag(tagCode));
+				}
+			}
 			
-			NodeDraft nd = elementDraftFactory.newNodeDraft(num.toString());
-			nd.setLabel(name);
+			NodeDraft nd = elementDraftFactory.newNodeDraft(Integer.toString(num));
+			nd.setLabel(snapshot.getNodeTitle(i));
 			nd.setValue(KEY_URL, urlbase + num);
 			nd.setValue(KEY_TAG, tags);
 			
 			cl.addNode(nd);
-			
-			return true;
-		});
+			nodes[i] = nd;
+		}
+		return nodes;
 	}
 	
-	protected void addEdges(Integer graphId, Connection con, ContainerLoader cl, Map<String, Object> graphParam) throws SQLException {
+	/** @param nodes Node drafts by snapshot node row index, from {@link #addNodes}. */
+	protected void addEdges(GraphSnapshot snapshot, ContainerLoader cl, Map<String, Object> graphParam, NodeDraft[] nodes) {
 		final ElementDraft.Factory elementDraftFactory = cl.factory();
 		
-		graphDataSource.populateEdgesForGraph(con, graphId, (num, source, target, val) -> {
-			EdgeDraft ed = elementDraftFactory.newEdgeDraft(num.toString());
-			ed.setSource(cl.getNode(source.toString()));
-			ed.setTarget(cl.getNode(target.toString()));
-			ed.setWeight(val.floatValue());
+		for (int i = 0; i < snapshot.getEdgeCount(); i++) {
+			addEdge(snapshot, cl, elementDraftFactory, nodes, i, snapshot.getEdgeVal(i));
+		}
+	}
 			
-			cl.addEdge(ed);
+	/** Add the snapshot's edge at the given row index, connecting node drafts by row index rather than looking them up by id.
+	 * @param weight Weight to give the edge. */
+	protected void addEdge(GraphSnapshot snapshot, ContainerLoader cl, ElementDraft.Factory elementDraftFactory, NodeDraft[] nodes, int index, float weight) {
+		EdgeDraft ed = elementDraftFactory.newEdgeDraft(Integer.toString(snapshot.getEdgeNum(index)));
+		ed.setSource(node(cl, nodes, snapshot.getEdgeSourceIndex(index), snapshot.getEdgeSource(index)));
+		ed.setTarget(node(cl, nodes, snapshot.getEdgeTargetIndex(index), snapshot.getEdgeTarget(index)));
+		ed.setWeight(weight);
 			
-			return true;
-		});
+		cl.addEdge(ed);
+	}
+	
+	/** Endpoints without a node row fall back to lookup by id, so the container handles them as before, e.g. creating the node. */
+	private static NodeDraft node(ContainerLoader cl, NodeDraft[] nodes, int nodeIndex, int num) {
+		return nodeIndex >= 0 ? nodes[nodeIndex] : cl.getNode(Integer.toString(num));
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.Arrays;
+
+/**
+ * Label overlap removal over primitive arrays: nodes are boxes, each the union of a node's label and its disc, centred on the node.
+ *
+ * Each round buckets the boxes into a uniform grid, so only boxes sharing a cell are compared, then pushes every overlapping pair
+ * apart by half their overlap each, along the axis needing the shorter move, and moves each node by the sum of its pushes.
+ * A pair is judged only in the cell holding the lower corner of the boxes' intersection, so it is pushed once however many cells
+ * the boxes share. Rounds run until no boxes overlap.
+ *
+ * @author Rob
+ */
+final class LabelOverlapRemoval {
+
+	/** Most grid cells per box: cells grow beyond the mean box size to keep the grid within this. */
+	private static final int MAX_CELLS_PER_BOX = 4;
+	/** Gap each push leaves between its pair, so that rounding cannot leave them just overlapping, round after round. */
+	private static final float SEPARATION = 1f;
+
+	private final int nodeCount;
+	private final float[] xs;
+	private final float[] ys;
+	private final float[] halfWidths;
+	private final float[] halfHeights;
+	private final float[] dxs;
+	private final float[] dys;
+	/** Grid cell side, at least the mean box side. */
+	private final float cellSize;
+
+	private int[] cellStarts = new int[0];
+	private int[] cellNodes = new int[0];
+	private float gridX;
+	private float gridY;
+	private float gridCell;
+	private int columns;
+	private int rows;
+
+	private int overlaps = -1;
+
+	/** @param xs Node x positions, moved in place by each round, as are ys.
+	 * @param halfWidths Half the width of each node's box, as are halfHeights its height. */
+	LabelOverlapRemoval(float[] xs, float[] ys, float[] halfWidths, float[] halfHeights) {
+		this.nodeCount = xs.length;
+		this.xs = xs;
+		this.ys = ys;
+		this.halfWidths = halfWidths;
+		this.halfHeights = halfHeights;
+		this.dxs = new float[nodeCount];
+		this.dys = new float[nodeCount];
+		double side = 0d;
+		for (int i = 0; i < nodeCount; i++) {
+			side += 2f * Math.max(halfWidths[i], halfHeights[i]);
+		}
+		this.cellSize = nodeCount > 0 ? (float) Math.max(side / nodeCount, 1d) : 1f;
+	}
+
+	/** @return False once a round has found no overlaps. */
+	boolean canAlgo() {
+		return overlaps != 0;
+	}
+
+	/** @return Overlapping pairs found by the last round, -1 before the first. */
+	int getOverlaps() {
+		return overlaps;
+	}
+
+	/** Run one round: find overlapping pairs through the grid, then move each node by the sum of its pushes. */
+	void goAlgo() {
+		if (nodeCount == 0) {
+			overlaps = 0;
+			return;
+		}
+		buildGrid();
+		Arrays.fill(dxs, 0f);
+		Arrays.fill(dys, 0f);
+		int found = 0;
+		for (int cell = 0, cells = columns * rows; cell < cells; cell++) {
+			for (int a = cellStarts[cell], end = cellStarts[cell + 1]; a < end; a++) {
+				int i = cellNodes[a];
+				for (int b = a + 1; b < end; b++) {
+					if (push(i, cellNodes[b], cell)) {
+						found++;
+					}
+				}
+			}
+		}
+		overlaps = found;
+
+		for (int i = 0; i < nodeCount; i++) {
+			xs[i] += dxs[i];
+			ys[i] += dys[i];
+		}
+	}
+
+	/** Push nodes i and j apart if their boxes overlap, and this is the cell to judge them in.
+	 * @return Whether they were pushed. */
+	private boolean push(int i, int j, int cell) {
+		float dx = xs[j] - xs[i];
+		float dy = ys[j] - ys[i];
+		float overlapX = halfWidths[i] + halfWidths[j] - Math.abs(dx);
+		float overlapY = halfHeights[i] + halfHeights[j] - Math.abs(dy);
+		if (overlapX <= 0f || overlapY <= 0f) {
+			return false;
+		}
+		float lowX = Math.max(xs[i] - halfWidths[i], xs[j] - halfWidths[j]);
+		float lowY = Math.max(ys[i] - halfHeights[i], ys[j] - halfHeights[j]);
+		if (row(lowY) * columns + column(lowX) != cell) {
+			return false;
+		}
+		// Coincident nodes are split by index, so the result does not depend on chance
+		if (overlapX < overlapY) {
+			float half = (dx > 0f || dx == 0f && i < j ? overlapX + SEPARATION : -overlapX - SEPARATION) / 2f;
+			dxs[i] -= half;
+			dxs[j] += half;
+		}
+		else {
+			float half = (dy > 0f || dy == 0f && i < j ? overlapY + SEPARATION : -overlapY - SEPARATION) / 2f;
+			dys[i] -= half;
+			dys[j] += half;
+		}
+		return true;
+	}
+
+	/** Bucket every box into each grid cell it covers, as CSR: the nodes in cell c are cellNodes[cellStarts[c]] to cellNodes[cellStarts[c + 1] - 1]. */
+	private void buildGrid() {
+		float lowX = Float.POSITIVE_INFINITY;
+		float lowY = Float.POSITIVE_INFINITY;
+		float highX = Float.NEGATIVE_INFINITY;
+		float highY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < nodeCount; i++) {
+			lowX = Math.min(lowX, xs[i] - halfWidths[i]);
+			lowY = Math.min(lowY, ys[i] - halfHeights[i]);
+			highX = Math.max(highX, xs[i] + halfWidths[i]);
+			highY = Math.max(highY, ys[i] + halfHeights[i]);
+		}
+		gridX = lowX;
+		gridY = lowY;
+		gridCell = cellSize;
+		long maxCells = (long) nodeCount * MAX_CELLS_PER_BOX;
+		while ((long) Math.ceil((highX - lowX) / gridCell) * (long) Math.ceil((highY - lowY) / gridCell) > maxCells) {
+			gridCell *= 2f;
+		}
+		columns = Math.max(1, (int) Math.ceil((highX - lowX) / gridCell));
+		rows = Math.max(1, (int) Math.ceil((highY - lowY) / gridCell));
+		int cells = columns * rows;
+
+		if (cellStarts.length < cells + 1) {
+			cellStarts = new int[cells + 1];
+		}
+		else {
+			Arrays.fill(cellStarts, 0, cells + 1, 0);
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			int column0 = column(xs[i] - halfWidths[i]);
+			int column1 = column(xs[i] + halfWidths[i]);
+			int row0 = row(ys[i] - halfHeights[i]);
+			int row1 = row(ys[i] + halfHeights[i]);
+			for (int row = row0; row <= row1; row++) {
+				for (int column = column0; column <= column1; column++) {
+					cellStarts[row * columns + column + 1]++;
+				}
+			}
+		}
+		for (int cell = 0; cell < cells; cell++) {
+			cellStarts[cell + 1] += cellStarts[cell];
+		}
+		if (cellNodes.length < cellStarts[cells]) {
+			cellNodes = new int[cellStarts[cells]];
+		}
+		int[] fill = Arrays.copyOf(cellStarts, cells);
+		for (int i = 0; i < nodeCount; i++) {
+			int column0 = column(xs[i] - halfWidths[i]);
+			int column1 = column(xs[i] + halfWidths[i]);
+			int row0 = row(ys[i] - halfHeights[i]);
+			int row1 = row(ys[i] + halfHeights[i]);
+			for (int row = row0; row <= row1; row++) {
+				for (int column = column0; column <= column1; column++) {
+					cellNodes[fill[row * columns + column]++] = i;
+				}
+			}
+		}
+	}
+
+	private int column(float x) {
+		return Math.min(columns - 1, Math.max(0, (int) ((x - gridX) / gridCell)));
+	}
+
+	private int row(float y) {
+		return Math.min(rows - 1, Math.max(0, (int) ((y - gridY) / gridCell)));
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,328 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Yifan Hu force directed layout over primitive arrays, with force accumulation split across a ForkJoin pool, or run on the caller's thread.
+ *
+ * Nodes are indexes into position and per iteration displacement arrays. Edges are held as CSR adjacency: the neighbours of node i
+ * are neighbours[offsets[i]] to neighbours[offsets[i + 1] - 1], every edge listed from both its ends.
+ * Each iteration builds a Barnes-Hut quadtree of the positions, then computes each node's repulsion through the tree and attraction
+ * along its edges. Every node's displacement is written only by the task owning that node, so tasks need no locking, and the
+ * fixed split of nodes between tasks gives the same layout whatever the pool size.
+ * Step length cools adaptively and convergence is judged on energy, as in Gephi's YifanHuLayout. A layout from scratch starts at
+ * a fifth of the optimal distance, as there; refining positions already laid out should start at a much smaller step, so settled
+ * nodes are not thrown out of place before the step has cooled again.
+ *
+ * @author Rob
+ */
+public final class ParallelForceLayout {
+
+	/** Nodes per ForkJoin task. */
+	private static final int TASK_NODES = 256;
+	/** Deepest quadtree level: coincident nodes share a leaf there rather than splitting it forever. */
+	private static final int MAX_DEPTH = 24;
+	private static final float RELATIVE_STRENGTH = 0.2f;
+	private static final float BARNES_HUT_THETA = 1.2f;
+	private static final float STEP_RATIO = 0.95f;
+	private static final float CONVERGENCE_THRESHOLD = 1e-4f;
+	/** Iterations of falling energy before the step is lengthened again. */
+	private static final int PROGRESS_ITERATIONS = 5;
+
+	private final ForkJoinPool pool;
+	private final int nodeCount;
+	private final float[] xs;
+	private final float[] ys;
+	private final float[] dxs;
+	private final float[] dys;
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final float optimalDistance;
+	/** Repulsion constant, relative strength times optimal distance squared. */
+	private final float repulsion;
+
+	private final QuadTree tree;
+	private float step;
+	private double energy = Double.POSITIVE_INFINITY;
+	private int progress;
+	private boolean converged;
+	private double movement;
+
+	/** Layout from scratch, starting at a fifth of the optimal distance.
+	 * @param pool Pool to accumulate forces across, or null to accumulate them on the thread calling {@link #goAlgo()}.
+	 * @param xs Node x positions, moved in place by each iteration, as are ys.
+	 * @param offsets CSR offsets, one more than there are nodes.
+	 * @param neighbours CSR neighbour node indexes. */
+	public ParallelForceLayout(ForkJoinPool pool, float[] xs, float[] ys, int[] offsets, int[] neighbours, float optimalDistance) {
+		this(pool, xs, ys, offsets, neighbours, optimalDistance, optimalDistance / 5f);
+	}
+
+	/** As {@link #ParallelForceLayout(ForkJoinPool, float[], float[], int[], int[], float)}, starting at the given step.
+	 * @param initialStep Distance nodes move in the first iteration, before the step adapts. */
+	public ParallelForceLayout(ForkJoinPool pool, float[] xs, float[] ys, int[] offsets, int[] neighbours, float optimalDistance, float initialStep) {
+		this.pool = pool;
+		this.nodeCount = xs.length;
+		this.xs = xs;
+		this.ys = ys;
+		this.dxs = new float[nodeCount];
+		this.dys = new float[nodeCount];
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.optimalDistance = optimalDistance;
+		this.repulsion = RELATIVE_STRENGTH * optimalDistance * optimalDistance;
+		this.tree = new QuadTree(nodeCount);
+		this.step = initialStep;
+	}
+
+	/** @return False once converged. */
+	public boolean canAlgo() {
+		return ! converged;
+	}
+
+	/** @return Mean node displacement of the last iteration, as a share of the larger side of the nodes' bounding box. */
+	public double getMovement() {
+		return movement;
+	}
+
+	/** Run one iteration: compute every node's displacement in parallel, then move the nodes and cool the step. */
+	public void goAlgo() {
+		if (nodeCount == 0) {
+			converged = true;
+			return;
+		}
+		tree.build(xs, ys);
+		double energy0 = energy;
+		ForceTask task = new ForceTask(0, nodeCount);
+		energy = pool != null ? pool.invoke(task) : task.computeHere();
+
+		int moved = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			float norm = (float) Math.sqrt(dxs[i] * dxs[i] + dys[i] * dys[i]);
+			if (norm > 0f) {
+				xs[i] += step * dxs[i] / norm;
+				ys[i] += step * dys[i] / norm;
+				moved++;
+			}
+		}
+		movement = (double) step * moved / nodeCount / tree.size[0];
+
+		if (energy < energy0) {
+			if (++progress >= PROGRESS_ITERATIONS) {
+				progress = 0;
+				step /= STEP_RATIO;
+			}
+		}
+		else {
+			progress = 0;
+			step *= STEP_RATIO;
+		}
+		if (energy == 0d || Math.abs((energy - energy0) / energy) < CONVERGENCE_THRESHOLD) {
+			converged = true;
+		}
+	}
+
+	/** Computes the displacement of a range of nodes, splitting it while larger than {@link #TASK_NODES}.
+	 * Answers the range's energy: the sum of its nodes' squared force. */
+	private final class ForceTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		private ForceTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from <= TASK_NODES) {
+				return computeRange();
+			}
+			int middle = (from + to) >>> 1;
+			ForceTask right = new ForceTask(middle, to);
+			right.fork();
+			double left = new ForceTask(from, middle).compute();
+			return left + right.join();
+		}
+
+		/** As {@link #compute()} without forking, summing the same ranges' energies in the same order, so giving the same layout. */
+		private double computeHere() {
+			if (to - from <= TASK_NODES) {
+				return computeRange();
+			}
+			int middle = (from + to) >>> 1;
+			double left = new ForceTask(from, middle).computeHere();
+			return left + new ForceTask(middle, to).computeHere();
+		}
+
+		private double computeRange() {
+			int[] stack = new int[3 * MAX_DEPTH + 4];
+			double rangeEnergy = 0d;
+			for (int i = from; i < to; i++) {
+				float x = xs[i];
+				float y = ys[i];
+				float fx = 0f;
+				float fy = 0f;
+
+				// Repulsion, far cells taken whole by their centre of mass
+				int top = 0;
+				stack[top++] = 0;
+				while (top > 0) {
+					int cell = stack[--top];
+					float mass = tree.mass[cell];
+					if (mass == 0f || tree.body[cell] == i) {
+						continue;
+					}
+					float dx = x - tree.massX[cell];
+					float dy = y - tree.massY[cell];
+					float distanceSq = dx * dx + dy * dy;
+					int child = tree.firstChild[cell];
+					if (child < 0 || tree.size[cell] * tree.size[cell] < BARNES_HUT_THETA * BARNES_HUT_THETA * distanceSq) {
+						if (distanceSq > 0f) {
+							float f = repulsion * mass / distanceSq;
+							fx += dx * f;
+							fy += dy * f;
+						}
+					}
+					else {
+						stack[top++] = child;
+						stack[top++] = child + 1;
+						stack[top++] = child + 2;
+						stack[top++] = child + 3;
+					}
+				}
+
+				// Attraction along edges
+				for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+					int j = neighbours[e];
+					float dx = xs[j] - x;
+					float dy = ys[j] - y;
+					float f = (float) Math.sqrt(dx * dx + dy * dy) / optimalDistance;
+					fx += dx * f;
+					fy += dy * f;
+				}
+
+				dxs[i] = fx;
+				dys[i] = fy;
+				rangeEnergy += fx * fx + fy * fy;
+			}
+			return rangeEnergy;
+		}
+	}
+
+	/** Barnes-Hut quadtree over node positions, held in arrays indexed by cell and rebuilt in place each iteration.
+	 * A cell's four children are consecutive, from firstChild. Cell 0 is the root. */
+	private static final class QuadTree {
+		private static final int EMPTY = -1;
+		/** Body of a cell holding more than one node, or an inner cell. */
+		private static final int MANY = -2;
+
+		private int capacity;
+		private int cellCount;
+		private float[] minX;
+		private float[] minY;
+		private float[] size;
+		private float[] mass;
+		private float[] massX;
+		private float[] massY;
+		private int[] firstChild;
+		private int[] body;
+
+		private QuadTree(int nodeCount) {
+			allocate(Math.max(4, 2 * nodeCount + 1));
+		}
+
+		private void allocate(int cells) {
+			capacity = cells;
+			minX = Arrays.copyOf(minX != null ? minX : new float[0], cells);
+			minY = Arrays.copyOf(minY != null ? minY : new float[0], cells);
+			size = Arrays.copyOf(size != null ? size : new float[0], cells);
+			mass = Arrays.copyOf(mass != null ? mass : new float[0], cells);
+			massX = Arrays.copyOf(massX != null ? massX : new float[0], cells);
+			massY = Arrays.copyOf(massY != null ? massY : new float[0], cells);
+			firstChild = Arrays.copyOf(firstChild != null ? firstChild : new int[0], cells);
+			body = Arrays.copyOf(body != null ? body : new int[0], cells);
+		}
+
+		/** Rebuild over the positions. Centres of mass are summed during insertion, then divided out. */
+		private void build(float[] xs, float[] ys) {
+			float lowX = Float.POSITIVE_INFINITY;
+			float lowY = Float.POSITIVE_INFINITY;
+			float highX = Float.NEGATIVE_INFINITY;
+			float highY = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < xs.length; i++) {
+				lowX = Math.min(lowX, xs[i]);
+				lowY = Math.min(lowY, ys[i]);
+				highX = Math.max(highX, xs[i]);
+				highY = Math.max(highY, ys[i]);
+			}
+			cellCount = 0;
+			newCell(lowX, lowY, Math.max(Math.max(highX - lowX, highY - lowY), 1f) * 1.0001f);
+			for (int i = 0; i < xs.length; i++) {
+				insert(i, xs[i], ys[i], xs, ys, 0, 0);
+			}
+			for (int cell = 0; cell < cellCount; cell++) {
+				if (mass[cell] > 0f) {
+					massX[cell] /= mass[cell];
+					massY[cell] /= mass[cell];
+				}
+			}
+		}
+
+		private int newCell(float x, float y, float cellSize) {
+			if (cellCount == capacity) {
+				allocate(capacity * 2);
+			}
+			int cell = cellCount++;
+			minX[cell] = x;
+			minY[cell] = y;
+			size[cell] = cellSize;
+			mass[cell] = 0f;
+			massX[cell] = 0f;
+			massY[cell] = 0f;
+			firstChild[cell] = EMPTY;
+			body[cell] = EMPTY;
+			return cell;
+		}
+
+		private void insert(int node, float x, float y, float[] xs, float[] ys, int cell, int depth) {
+			while (true) {
+				mass[cell] += 1f;
+				massX[cell] += x;
+				massY[cell] += y;
+				if (firstChild[cell] < 0) {
+					if (body[cell] == EMPTY) {
+						body[cell] = node;
+						return;
+					}
+					if (depth == MAX_DEPTH) {
+						body[cell] = MANY;
+						return;
+					}
+					// Split the leaf, moving its node down before carrying on with ours
+					int other = body[cell];
+					body[cell] = MANY;
+					float half = size[cell] / 2f;
+					int child = newCell(minX[cell], minY[cell], half);
+					newCell(minX[cell] + half, minY[cell], half);
+					newCell(minX[cell], minY[cell] + half, half);
+					newCell(minX[cell] + half, minY[cell] + half, half);
+					firstChild[cell] = child;
+					insert(other, xs[other], ys[other], xs, ys, quadrant(cell, xs[other], ys[other]), depth + 1);
+				}
+				cell = quadrant(cell, x, y);
+				depth++;
+			}
+		}
+
+		private int quadrant(int cell, float x, float y) {
+			float half = size[cell] / 2f;
+			int index = (x >= minX[cell] + half ? 1 : 0) + (y >= minY[cell] + half ? 2 : 0);
+			return firstChild[cell] + index;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,170 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Betweenness centrality of a directed, unweighted graph, estimated by Brandes' algorithm from a sample of source nodes,
+ * with the single source traversals split across {@link GraphArrays#POOL}.
+ *
+ * Sampling k sources uniformly, and scaling their dependencies by n / k, estimates each node's betweenness normalised by
+ * n(n - 1) to within error e, with probability 1 - d, for k = ln(2n / d) / (2e^2) (Hoeffding's bound, union over nodes).
+ * When that is as many sources as there are nodes, every node is a source and the result is exact, as GraphDistance's.
+ * Sources are drawn from a random seeded by the graph's size, so an unchanged graph is given the same estimate every time.
+ *
+ * @author Rob
+ */
+final class SampledBetweenness {
+
+	/** Probability of any node's estimate exceeding the error bound. */
+	private static final double FAILURE_PROBABILITY = 0.1d;
+	/** Sources per ForkJoin task: each task holds scratch arrays sized by the graph, so tasks are kept few. */
+	private static final int MIN_TASK_SOURCES = 16;
+
+	private final int nodeCount;
+	private final int[] offsets;
+	private final int[] neighbours;
+
+	SampledBetweenness(GraphArrays arrays) {
+		GraphArrays.Csr outgoing = arrays.outgoing();
+		this.nodeCount = arrays.nodeCount;
+		this.offsets = outgoing.offsets;
+		this.neighbours = outgoing.neighbours;
+	}
+
+	/** @param error Bound on the error of normalised betweenness.
+	 * @return Number of sources to sample for the bound, at most every node. */
+	int sampleSize(double error) {
+		if (nodeCount < 2) {
+			return nodeCount;
+		}
+		double samples = Math.log(2d * nodeCount / FAILURE_PROBABILITY) / (2d * error * error);
+		return (int) Math.min(nodeCount, Math.ceil(samples));
+	}
+
+	/** @param samples Number of source nodes, see {@link #sampleSize(double)}.
+	 * @return Estimated betweenness by node index, on the scale of exact betweenness. */
+	double[] compute(int samples) {
+		int[] sources = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			sources[i] = i;
+		}
+		if (samples < nodeCount) {
+			// Partial Fisher-Yates shuffle: the first samples entries become a uniform sample
+			Random random = new Random(nodeCount);
+			for (int i = 0; i < samples; i++) {
+				int j = i + random.nextInt(nodeCount - i);
+				int swap = sources[i];
+				sources[i] = sources[j];
+				sources[j] = swap;
+			}
+		}
+
+		int taskSources = Math.max(MIN_TASK_SOURCES, samples / (GraphArrays.POOL.getParallelism() * 4) + 1);
+		double[] betweenness = samples > 0 ? GraphArrays.POOL.invoke(new SourceTask(sources, 0, samples, taskSources)) : new double[nodeCount];
+		if (samples < nodeCount) {
+			double scale = (double) nodeCount / samples;
+			for (int i = 0; i < nodeCount; i++) {
+				betweenness[i] *= scale;
+			}
+		}
+		return betweenness;
+	}
+
+	/** Accumulates the dependencies of a range of sources, splitting it while larger than its task size. */
+	private final class SourceTask extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] sources;
+		private final int from;
+		private final int to;
+		private final int taskSources;
+
+		private SourceTask(int[] sources, int from, int to, int taskSources) {
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+			this.taskSources = taskSources;
+		}
+
+		@Override
+		protected double[] compute() {
+			if (to - from <= taskSources) {
+				return computeRange();
+			}
+			int middle = (from + to) >>> 1;
+			SourceTask right = new SourceTask(sources, middle, to, taskSources);
+			right.fork();
+			double[] left = new SourceTask(sources, from, middle, taskSources).compute();
+			double[] rightResult = right.join();
+			for (int i = 0; i < nodeCount; i++) {
+				left[i] += rightResult[i];
+			}
+			return left;
+		}
+
+		/** Brandes' single source shortest paths then dependency accumulation, for each source in the range.
+		 * Dependencies are accumulated over successors on shortest paths, so no predecessor lists are needed. */
+		private double[] computeRange() {
+			double[] betweenness = new double[nodeCount];
+			int[] distance = new int[nodeCount];
+			double[] paths = new double[nodeCount];
+			double[] dependency = new double[nodeCount];
+			int[] order = new int[nodeCount];
+			Arrays.fill(distance, -1);
+
+			for (int s = from; s < to; s++) {
+				int source = sources[s];
+				distance[source] = 0;
+				paths[source] = 1d;
+				int head = 0;
+				int tail = 0;
+				order[tail++] = source;
+
+				// Breadth first: order doubles as the queue, leaving nodes sorted by distance
+				while (head < tail) {
+					int v = order[head++];
+					int next = distance[v] + 1;
+					for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+						int w = neighbours[e];
+						if (distance[w] < 0) {
+							distance[w] = next;
+							order[tail++] = w;
+						}
+						if (distance[w] == next) {
+							paths[w] += paths[v];
+						}
+					}
+				}
+
+				// Back from the furthest, every node's successors are done before it
+				for (int k = tail - 1; k >= 0; k--) {
+					int v = order[k];
+					int next = distance[v] + 1;
+					double sum = 0d;
+					for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+						int w = neighbours[e];
+						if (distance[w] == next) {
+							sum += paths[v] / paths[w] * (1d + dependency[w]);
+						}
+					}
+					dependency[v] = sum;
+					if (v != source) {
+						betweenness[v] += sum;
+					}
+				}
+
+				// Reset only what this source touched
+				for (int k = 0; k < tail; k++) {
+					int v = order[k];
+					distance[v] = -1;
+					paths[v] = 0d;
+					dependency[v] = 0d;
+				}
+			}
+			return betweenness;
+		}
+	}
+
+}
\ No newline at end of file
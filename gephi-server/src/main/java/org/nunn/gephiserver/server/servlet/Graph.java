@@ -1,23 +1,84 @@
 package org.nunn.gephiserver.server.servlet;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
 import org.nunn.gephiserver.server.graphing.GraphBuilder;
+import org.nunn.gephiserver.server.graphing.GraphJobListener;
+import org.nunn.gephiserver.server.graphing.GraphLayout;
 import org.nunn.gephiserver.server.graphing.GraphOutput;
+import org.nunn.gephiserver.server.system.ByteChunkOutputStream;
 import org.nunn.gephiserver.server.system.MimeType;
-import org.nunn.gephiserver.server.system.StringBuilderWriter;
 
 @Path("/graph") //Sets the path to base URL + /graph
 public class Graph {
 	
+	private static final Logger LOGGER = LogManager.getLogger(Graph.class);
+	
+	/** Response header set on renders whose layout was cut short to meet the job deadline. */
+	public static final String TRUNCATED_HEADER = "X-Graph-Truncated";
+	
+	/** Resumes a suspended request with the render's result. Failures go through the usual exception mappers.
+	 * Sync renders are suspended rather than blocking a container thread until the render completes. */
+	private static <T> BiConsumer<T, Throwable> resume(AsyncResponse asyncResponse) {
+		return (result, failure) -> {
+			if (failure != null) {
+				asyncResponse.resume(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+			}
+			else {
+				asyncResponse.resume(result);
+			}
+		};
+	}
+	
+	/** @return The named layout, see {@link GraphBuilder#getLayout(String)}. */
+	private static GraphLayout layout(String name) {
+		try {
+			return GraphBuilder.INSTANCE.getLayout(name);
+		}
+		catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+	}
+	
+	/** @return The rendered graph, flagged by header if its layout was truncated. Null if there is no result yet. */
+	private static <OT> Response rendered(GraphOutput<OT> result, Function<OT, Object> entity) {
+		if (result == null) {
+			return null;
+		}
+		Response.ResponseBuilder builder = Response.ok(entity.apply(result.output));
+		if (result.truncated) {
+			builder.header(TRUNCATED_HEADER, Boolean.TRUE);
+		}
+		return builder.build();
+	}
+	
+	/** @return Entity writing SVG bytes straight to the response, rather than building and encoding a String first. */
+	private static StreamingOutput streamed(ByteChunkOutputStream svg) {
+		return svg::writeTo;
+	}
+	
 	@GET
 	@Path("/list")
 	@Produces({MimeType.APPLICATION_JSON})
@@ -25,88 +86,146 @@ public class Graph {
 		return GraphBuilder.INSTANCE.listGraphs();
 	}
 	
+	@GET
+	@Path("/cacheStats")
+	@Produces({MimeType.APPLICATION_JSON})
+	public Map<String, Long> cacheStats() {
+		return GraphBuilder.INSTANCE.getRenderCacheStats();
+	}
+	
 	@POST
 	@Path("/stdSvg")
 	@Produces({MimeType.APPLICATION_SVG_XML, MimeType.TEXT_HTML})
-	public String stdSvg(@FormParam("graphId") Integer graphId) throws Exception {
+	public void stdSvg(@FormParam("graphId") Integer graphId, @FormParam("layout") String layout, @Suspended AsyncResponse asyncResponse) {
 		Map<String, Object> extraParam = Collections.<String, Object>emptyMap();
-		GraphOutput<StringBuilderWriter> result = GraphBuilder.INSTANCE.doGraph(GraphBuilder.INSTANCE.logicStd, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
-		return result.output.toString();
+		GraphBuilder.INSTANCE.doGraphCompletable(GraphBuilder.INSTANCE.logicStd, layout(layout), GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam)
+			.thenApply(result -> rendered(result, Graph::streamed))
+			.whenComplete(resume(asyncResponse));
 	}
 	
 	@POST
 	@Path("/rootySvg")
 	@Produces({MimeType.APPLICATION_SVG_XML, MimeType.TEXT_HTML})
-	public String rootySvg(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId) throws Exception {
+	public void rootySvg(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId, @FormParam("layout") String layout, @Suspended AsyncResponse asyncResponse) {
 		Map<String, Object> extraParam = Collections.<String, Object>singletonMap("rootNodeId", rootNodeId);
-		GraphOutput<StringBuilderWriter> result = GraphBuilder.INSTANCE.doGraph(GraphBuilder.INSTANCE.logicRoot, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
-		return result.output.toString();
+		GraphBuilder.INSTANCE.doGraphCompletable(GraphBuilder.INSTANCE.logicRoot, layout(layout), GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam)
+			.thenApply(result -> rendered(result, Graph::streamed))
+			.whenComplete(resume(asyncResponse));
 	}
 	
 	@POST
 	@Path("/stdSvgAsync")
 	@Produces({MimeType.TEXT_PLAIN})
-	public String stdSvgAsync(@FormParam("graphId") Integer graphId) {
+	public String stdSvgAsync(@FormParam("graphId") Integer graphId, @FormParam("layout") String layout) {
 		Map<String, Object> extraParam = Collections.<String, Object>emptyMap();
-		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicStd, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
+		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicStd, layout(layout), GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
 	}
 	
 	@POST
 	@Path("/rootySvgAsync")
 	@Produces({MimeType.TEXT_PLAIN})
-	public String rootySvgAsync(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId) {
+	public String rootySvgAsync(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId, @FormParam("layout") String layout) {
 		Map<String, Object> extraParam = Collections.<String, Object>singletonMap("rootNodeId", rootNodeId);
-		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicRoot, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
+		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicRoot, layout(layout), GraphBuilder.INSTANCE.exporterSvg, graphId, extraParam);
 	}
 	
 	@POST
 	@Path("/getSvgAsyncResult")
 	@Produces({MimeType.APPLICATION_SVG_XML, MimeType.TEXT_HTML})
-	public String getSvgAsyncResult(@FormParam("uuid") String uuid) throws Exception {
-		GraphOutput<StringBuilderWriter> result = GraphBuilder.INSTANCE.getAsyncResult(uuid);
-		return result != null ? result.output.toString() : null;
+	public Response getSvgAsyncResult(@FormParam("uuid") String uuid) throws Exception {
+		GraphOutput<ByteChunkOutputStream> result = GraphBuilder.INSTANCE.getAsyncResult(uuid);
+		return rendered(result, Graph::streamed);
+	}
+	
+	@POST
+	@Path("/awaitSvgAsyncResult")
+	@Produces({MimeType.APPLICATION_SVG_XML, MimeType.TEXT_HTML})
+	public void awaitSvgAsyncResult(@FormParam("uuid") String uuid, @FormParam("waitMillis") long waitMillis, @Suspended AsyncResponse asyncResponse) {
+		GraphBuilder.INSTANCE.<ByteChunkOutputStream>awaitAsyncResult(uuid, waitMillis)
+			.thenApply(result -> rendered(result, Graph::streamed))
+			.whenComplete(resume(asyncResponse));
 	}
 	
 	@POST
 	@Path("/stdPdf")
 	@Produces({MimeType.APPLICATION_PDF})
-	public byte[] stdPdf(@FormParam("graphId") Integer graphId) throws Exception {
+	public void stdPdf(@FormParam("graphId") Integer graphId, @FormParam("layout") String layout, @Suspended AsyncResponse asyncResponse) {
 		Map<String, Object> extraParam = Collections.<String, Object>emptyMap();
-		GraphOutput<ByteArrayOutputStream> result = GraphBuilder.INSTANCE.doGraph(GraphBuilder.INSTANCE.logicStd, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);;
-		return result.output.toByteArray();
+		GraphBuilder.INSTANCE.doGraphCompletable(GraphBuilder.INSTANCE.logicStd, layout(layout), GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam)
+			.thenApply(result -> rendered(result, ByteArrayOutputStream::toByteArray))
+			.whenComplete(resume(asyncResponse));
 	}
 	
 	@POST
 	@Path("/rootyPdf")
 	@Produces({MimeType.APPLICATION_PDF})
-	public byte[] rootyPdf(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId) throws Exception {
+	public void rootyPdf(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId, @FormParam("layout") String layout, @Suspended AsyncResponse asyncResponse) {
 		Map<String, Object> extraParam = Collections.<String, Object>singletonMap("rootNodeId", rootNodeId);
-		GraphOutput<ByteArrayOutputStream> result = GraphBuilder.INSTANCE.doGraph(GraphBuilder.INSTANCE.logicRoot, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);;
-		return result.output.toByteArray();
+		GraphBuilder.INSTANCE.doGraphCompletable(GraphBuilder.INSTANCE.logicRoot, layout(layout), GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam)
+			.thenApply(result -> rendered(result, ByteArrayOutputStream::toByteArray))
+			.whenComplete(resume(asyncResponse));
 	}
 	
 	@POST
 	@Path("/stdPdfAsync")
 	@Produces({MimeType.TEXT_PLAIN})
-	public String stdPdfAsync(@FormParam("graphId") Integer graphId) {
+	public String stdPdfAsync(@FormParam("graphId") Integer graphId, @FormParam("layout") String layout) {
 		Map<String, Object> extraParam = Collections.<String, Object>emptyMap();
-		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicStd, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);
+		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicStd, layout(layout), GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);
 	}
 	
 	@POST
 	@Path("/rootyPdfAsync")
 	@Produces({MimeType.TEXT_PLAIN})
-	public String rootyPdfAsync(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId) {
+	public String rootyPdfAsync(@FormParam("graphId") Integer graphId, @FormParam("rootNodeId") int rootNodeId, @FormParam("layout") String layout) {
 		Map<String, Object> extraParam = Collections.<String, Object>singletonMap("rootNodeId", rootNodeId);
-		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicRoot, GraphBuilder.INSTANCE.layoutStd, GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);
+		return GraphBuilder.INSTANCE.doGraphAsync(GraphBuilder.INSTANCE.logicRoot, layout(layout), GraphBuilder.INSTANCE.exporterPdf, graphId, extraParam);
 	}
 	
 	@POST
 	@Path("/getPdfAsyncResult")
 	@Produces({MimeType.APPLICATION_PDF})
-	public byte[] getPdfAsyncResult(@FormParam("uuid") String uuid) throws Exception {
+	public Response getPdfAsyncResult(@FormParam("uuid") String uuid) throws Exception {
 		GraphOutput<ByteArrayOutputStream> result = GraphBuilder.INSTANCE.getAsyncResult(uuid);
-		return result != null ? result.output.toByteArray() : null;
+		return rendered(result, ByteArrayOutputStream::toByteArray);
+	}
+	
+	@POST
+	@Path("/awaitPdfAsyncResult")
+	@Produces({MimeType.APPLICATION_PDF})
+	public void awaitPdfAsyncResult(@FormParam("uuid") String uuid, @FormParam("waitMillis") long waitMillis, @Suspended AsyncResponse asyncResponse) {
+		GraphBuilder.INSTANCE.<ByteArrayOutputStream>awaitAsyncResult(uuid, waitMillis)
+			.thenApply(result -> rendered(result, ByteArrayOutputStream::toByteArray))
+			.whenComplete(resume(asyncResponse));
+	}
+	
+	/** Server sent events for an async job's progress: queued, started, stage and, last, done.
+	 * The result is then picked up as usual, so the stream carries no graph data. */
+	@GET
+	@Path("/asyncEvents")
+	@Produces({MimeType.TEXT_EVENT_STREAM})
+	public EventOutput asyncEvents(@QueryParam("uuid") String uuid) {
+		EventOutput eventOutput = new EventOutput();
+		GraphBuilder.INSTANCE.listenAsync(uuid, (event, detail) -> {
+			if (eventOutput.isClosed()) {
+				return;
+			}
+			try {
+				eventOutput.write(new OutboundEvent.Builder().name(event).data(String.class, detail).build());
+				if (GraphJobListener.DONE.equals(event)) {
+					eventOutput.close();
+				}
+			}
+			catch (IOException e) {
+				LOGGER.debug("Async event stream for {} closed by client.", uuid);
+				try {
+					eventOutput.close();
+				}
+				catch (IOException ignored) {
+				}
+			}
+		});
+		return eventOutput;
 	}
 	
 }
\ No newline at end of file
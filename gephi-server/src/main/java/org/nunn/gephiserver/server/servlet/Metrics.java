@@ -0,0 +1,19 @@
+package org.nunn.gephiserver.server.servlet;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.nunn.gephiserver.server.system.MetricRegistry;
+
+@Path("/metrics") //Sets the path to base URL + /metrics
+public class Metrics {
+	
+	/** Scrape endpoint for Prometheus. */
+	@GET
+	@Produces({MetricRegistry.CONTENT_TYPE})
+	public String metrics() {
+		return MetricRegistry.INSTANCE.scrape();
+	}
+	
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package org.nunn.gephiserver.server.system;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decoder for PostgreSQL's binary COPY format, as produced by COPY ... TO STDOUT (FORMAT binary).
+ *
+ * Rows are read one at a time with {@link #nextRow()}, then their fields in order with the read method matching each
+ * column's type: int4, float4 and text are supported, so queries should cast their columns to those.
+ *
+ * @author Rob
+ */
+public class BinaryCopyReader implements AutoCloseable {
+
+	private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+	private final DataInputStream in;
+	private byte[] textBuffer = new byte[256];
+	private int fieldsLeft;
+
+	/** Reads and checks the COPY header. */
+	public BinaryCopyReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+
+		byte[] signature = new byte[SIGNATURE.length];
+		this.in.readFully(signature);
+		if ( ! Arrays.equals(signature, SIGNATURE)) {
+			throw new IOException("Not binary COPY data");
+		}
+		this.in.readInt(); // flags: bit 16, OIDs included, is not used by COPY (SELECT ...)
+		int extensionLength = this.in.readInt();
+		if (this.in.skipBytes(extensionLength) != extensionLength) {
+			throw new EOFException("Truncated binary COPY header");
+		}
+	}
+
+	/** Start the next row, skipping any fields not read from the previous one.
+	 * @return False at the end of the data. */
+	public boolean nextRow() throws IOException {
+		while (fieldsLeft > 0) {
+			int length = fieldLength();
+			if (length > 0 && in.skipBytes(length) != length) {
+				throw new EOFException("Truncated binary COPY field");
+			}
+		}
+		int fields = in.readShort();
+		if (fields < 0) {
+			return false;
+		}
+		fieldsLeft = fields;
+		return true;
+	}
+
+	/** @return Next field as an int4, 0 if null as ResultSet.getInt() gives. */
+	public int readInt() throws IOException {
+		int length = fieldLength();
+		if (length < 0) {
+			return 0;
+		}
+		checkLength(length, 4);
+		return in.readInt();
+	}
+
+	/** @return Next field as a float4, 0 if null as ResultSet.getFloat() gives. */
+	public float readFloat() throws IOException {
+		int length = fieldLength();
+		if (length < 0) {
+			return 0;
+		}
+		checkLength(length, 4);
+		return in.readFloat();
+	}
+
+	/** @return Next field as text, or null. */
+	public String readString() throws IOException {
+		int length = fieldLength();
+		if (length < 0) {
+			return null;
+		}
+		if (length > textBuffer.length) {
+			textBuffer = new byte[Math.max(length, textBuffer.length * 2)];
+		}
+		in.readFully(textBuffer, 0, length);
+		return new String(textBuffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/** @return Length in bytes of the next field, -1 for null. */
+	private int fieldLength() throws IOException {
+		if (fieldsLeft <= 0) {
+			throw new IOException("No more fields in binary COPY row");
+		}
+		fieldsLeft--;
+		return in.readInt();
+	}
+
+	private static void checkLength(int length, int expected) throws IOException {
+		if (length != expected) {
+			throw new IOException("Binary COPY field of " + length + " bytes, expected " + expected);
+		}
+	}
+
+	/** Closes the underlying stream, which for a copy still in progress cancels it. */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
\ No newline at end of file
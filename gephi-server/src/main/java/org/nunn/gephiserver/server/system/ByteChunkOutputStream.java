@@ -0,0 +1,107 @@
+package org.nunn.gephiserver.server.system;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream collecting its bytes in a list of chunks, for large output written once then read many times.
+ *
+ * Unlike ByteArrayOutputStream, growing never copies what has been written: each chunk is twice the size of the last,
+ * up to {@link #MAX_CHUNK}. Once written, the bytes can be written on with {@link #writeTo(OutputStream)}, e.g. to an HTTP
+ * response, without first being gathered into one array. Not thread safe while written; safe to read from many threads after.
+ *
+ * @author Rob
+ */
+public class ByteChunkOutputStream extends OutputStream {
+
+	private static final int FIRST_CHUNK = 8192;
+	private static final int MAX_CHUNK = 1024 * 1024;
+
+	private final List<byte[]> chunks = new ArrayList<>();
+	private byte[] chunk;
+	/** Bytes written to the last chunk. */
+	private int used;
+	/** Bytes in the chunks before the last. */
+	private long filled;
+
+	public ByteChunkOutputStream() {
+		chunk = new byte[FIRST_CHUNK];
+		chunks.add(chunk);
+	}
+
+	/** Wrap bytes already written, e.g. by {@link #toByteArray()}. */
+	public ByteChunkOutputStream(byte[] bytes) {
+		chunk = bytes;
+		chunks.add(chunk);
+		used = bytes.length;
+	}
+
+	@Override
+	public void write(int b) {
+		if (used == chunk.length) {
+			nextChunk();
+		}
+		chunk[used++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		while (len > 0) {
+			if (used == chunk.length) {
+				nextChunk();
+			}
+			int n = Math.min(len, chunk.length - used);
+			System.arraycopy(b, off, chunk, used, n);
+			used += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void nextChunk() {
+		filled += used;
+		chunk = new byte[Math.min(MAX_CHUNK, Math.max(FIRST_CHUNK, chunk.length * 2))];
+		chunks.add(chunk);
+		used = 0;
+	}
+
+	/** @return Number of bytes written. */
+	public long size() {
+		return filled + used;
+	}
+
+	/** @return Heap bytes held by the chunks, used or not. */
+	public long capacity() {
+		long capacity = 0L;
+		for (byte[] c : chunks) {
+			capacity += c.length;
+		}
+		return capacity;
+	}
+
+	/** Write every byte written to this stream to another, chunk by chunk. */
+	public void writeTo(OutputStream out) throws IOException {
+		int last = chunks.size() - 1;
+		for (int i = 0; i < last; i++) {
+			out.write(chunks.get(i));
+		}
+		out.write(chunks.get(last), 0, used);
+	}
+
+	/** @return Copy of the bytes written, as one array. */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[Math.toIntExact(size())];
+		int off = 0;
+		int last = chunks.size() - 1;
+		for (int i = 0; i < last; i++) {
+			byte[] c = chunks.get(i);
+			System.arraycopy(c, 0, bytes, off, c.length);
+			off += c.length;
+		}
+		System.arraycopy(chunks.get(last), 0, bytes, off, used);
+		return bytes;
+	}
+
+}
\ No newline at end of file
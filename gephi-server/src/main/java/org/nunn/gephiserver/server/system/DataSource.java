@@ -10,6 +10,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,6 +22,7 @@ import org.nunn.gephiserver.server.Props;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 public class DataSource {
 	
@@ -72,6 +74,25 @@ public class DataSource {
 		return ds.getConnection();
 	}
 	
+	/** @return Connection pool counts: active, idle, total, and threads awaiting a connection. */
+	public Map<String, Integer> getPoolStats() {
+		Map<String, Integer> stats = new LinkedHashMap<>();
+		HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+		if (pool != null) {
+			stats.put("active", pool.getActiveConnections());
+			stats.put("idle", pool.getIdleConnections());
+			stats.put("total", pool.getTotalConnections());
+			stats.put("awaiting", pool.getThreadsAwaitingConnection());
+		}
+		return stats;
+	}
+	
+	/** @return True if the pool has a connection idle right now, so one could be borrowed without waiting. */
+	public boolean hasIdleConnection() {
+		HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+		return pool != null && pool.getIdleConnections() > 0;
+	}
+	
 	public void close() {
 		LOGGER.info("Closing data source pool {}.", ds.getPoolName());
 		ds.close();
@@ -0,0 +1,101 @@
+package org.nunn.gephiserver.server.system;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Least recently used cache, bounded by the summed weight (e.g. bytes) of its values rather than entry count. **/
+public class LruCache<TKey, TValue> {
+
+	private class CacheEntry {
+		private final TValue data;
+		private final long weight;
+
+		private CacheEntry(TValue data, long weight) {
+			this.data = data;
+			this.weight = weight;
+		}
+	}
+
+	private final LinkedHashMap<TKey, CacheEntry> cache;
+	private final long maxWeight;
+	private long weight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** @param maxWeight Total weight of values held, beyond which least recently used entries are evicted. */
+	public LruCache(long maxWeight) {
+		this.cache = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxWeight = maxWeight;
+	}
+
+	public synchronized TValue get(TKey key) {
+		CacheEntry entry = cache.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.data;
+	}
+
+	/** @param entryWeight Weight of the value, e.g. its size in bytes. Values heavier than the maximum are not cached. */
+	public synchronized void put(TKey key, TValue data, long entryWeight) {
+		if (entryWeight > maxWeight) {
+			return;
+		}
+		CacheEntry previous = cache.put(key, new CacheEntry(data, entryWeight));
+		if (previous != null) {
+			weight -= previous.weight;
+		}
+		weight += entryWeight;
+
+		for (Iterator<Entry<TKey, CacheEntry>> it = cache.entrySet().iterator(); weight > maxWeight && it.hasNext();) {
+			weight -= it.next().getValue().weight;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized TValue remove(TKey key) {
+		CacheEntry entry = cache.remove(key);
+		if (entry == null) {
+			return null;
+		}
+		weight -= entry.weight;
+		return entry.data;
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+}
\ No newline at end of file
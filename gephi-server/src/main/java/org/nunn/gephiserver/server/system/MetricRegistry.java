@@ -0,0 +1,232 @@
+package org.nunn.gephiserver.server.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Singleton registry of counters, gauges and histograms, rendered in Prometheus text exposition format (version 0.0.4).
+ *
+ * Recording is lock free, so metrics can be updated from render and request threads alike.
+ * Metrics are rendered in the order they were registered.
+ *
+ * @author Rob
+ */
+public class MetricRegistry {
+
+	public static final String CONTENT_TYPE = MimeType.TEXT_PLAIN + "; version=0.0.4; charset=utf-8";
+
+	/** Histogram bucket upper bounds, in seconds: render stages range from milliseconds to minutes. */
+	private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+	private interface Metric {
+		void writeTo(StringBuilder sb);
+	}
+
+	public static class Counter implements Metric {
+		private final String name;
+		private final String help;
+		private final LongAdder count = new LongAdder();
+
+		private Counter(String name, String help) {
+			this.name = name;
+			this.help = help;
+		}
+
+		public void inc() {
+			count.increment();
+		}
+
+		@Override
+		public void writeTo(StringBuilder sb) {
+			header(sb, name, help, "counter");
+			sample(sb, name, null, null, count.sum());
+		}
+	}
+
+	/** Histogram of durations, optionally split by the value of a single label. */
+	public static class Histogram implements Metric {
+		private final String name;
+		private final String help;
+		private final String labelName;
+		private final ConcurrentMap<String, Child> children = new ConcurrentHashMap<>();
+
+		private Histogram(String name, String help, String labelName) {
+			this.name = name;
+			this.help = help;
+			this.labelName = labelName;
+		}
+
+		public void observeMillis(long millis) {
+			observeMillis(null, millis);
+		}
+
+		/** @param labelValue Value of the histogram's label, ignored if it has none. */
+		public void observeMillis(String labelValue, long millis) {
+			children.computeIfAbsent(labelName != null && labelValue != null ? labelValue : "", k -> new Child()).observe(millis / 1000d);
+		}
+
+		@Override
+		public void writeTo(StringBuilder sb) {
+			header(sb, name, help, "histogram");
+			List<String> labelValues = new ArrayList<>(children.keySet());
+			Collections.sort(labelValues);
+			for (String labelValue : labelValues) {
+				Child child = children.get(labelValue);
+				String label = labelName != null ? labelName + "=\"" + escape(labelValue) + "\"," : "";
+				long cumulative = 0;
+				for (int i = 0; i < BUCKETS.length; i++) {
+					cumulative += child.buckets.get(i);
+					sample(sb, name + "_bucket", label + "le=\"" + BUCKETS[i] + "\"", null, cumulative);
+				}
+				long count = child.count.sum();
+				sample(sb, name + "_bucket", label + "le=\"+Inf\"", null, count);
+				String plainLabel = labelName != null ? labelName + "=\"" + escape(labelValue) + "\"" : null;
+				sample(sb, name + "_sum", plainLabel, null, child.sum.sum());
+				sample(sb, name + "_count", plainLabel, null, count);
+			}
+		}
+	}
+
+	private static class Child {
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length);
+		private final LongAdder count = new LongAdder();
+		private final DoubleAdder sum = new DoubleAdder();
+
+		private void observe(double seconds) {
+			for (int i = 0; i < BUCKETS.length; i++) {
+				if (seconds <= BUCKETS[i]) {
+					buckets.incrementAndGet(i);
+					break;
+				}
+			}
+			count.increment();
+			sum.add(seconds);
+		}
+	}
+
+	/** Gauge, or counter kept elsewhere, e.g. by a cache, read at scrape time, optionally split by the keys of the supplied map. */
+	private static class Sampled implements Metric {
+		private final String name;
+		private final String help;
+		private final String type;
+		private final String labelName;
+		private final Supplier<? extends Map<String, ? extends Number>> values;
+
+		private Sampled(String name, String help, String type, String labelName, Supplier<? extends Map<String, ? extends Number>> values) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.labelName = labelName;
+			this.values = values;
+		}
+
+		@Override
+		public void writeTo(StringBuilder sb) {
+			Map<String, ? extends Number> current = values.get();
+			if (current == null) {
+				return;
+			}
+			header(sb, name, help, type);
+			for (Entry<String, ? extends Number> value : current.entrySet()) {
+				sample(sb, name, labelName, value.getKey(), value.getValue().doubleValue());
+			}
+		}
+	}
+
+	public static final MetricRegistry INSTANCE = new MetricRegistry();
+
+	private final Map<String, Metric> metrics = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	private MetricRegistry() {
+	}
+
+	public Counter counter(String name, String help) {
+		return register(name, new Counter(name, help));
+	}
+
+	/** @param labelName Name of the label splitting the histogram, or null for none. */
+	public Histogram histogram(String name, String help, String labelName) {
+		return register(name, new Histogram(name, help, labelName));
+	}
+
+	/** @param value Read at scrape time, e.g. from a cache's own count, which must only ever increase; a null value omits the counter. */
+	public void counter(String name, String help, Supplier<? extends Number> value) {
+		register(name, new Sampled(name, help, "counter", null, single(value)));
+	}
+
+	/** @param value Read at scrape time; a null value omits the gauge. */
+	public void gauge(String name, String help, Supplier<? extends Number> value) {
+		register(name, new Sampled(name, help, "gauge", null, single(value)));
+	}
+
+	/** @param values Read at scrape time, giving a value per label value; a null map omits the gauge. */
+	public void gauge(String name, String help, String labelName, Supplier<? extends Map<String, ? extends Number>> values) {
+		register(name, new Sampled(name, help, "gauge", labelName, values));
+	}
+
+	private static Supplier<Map<String, Number>> single(Supplier<? extends Number> value) {
+		return () -> {
+			Number current = value.get();
+			return current != null ? Collections.singletonMap(null, current) : null;
+		};
+	}
+
+	/** Registering a name again replaces the earlier metric, so redeploys in the same class loader do not duplicate it. */
+	private <T extends Metric> T register(String name, T metric) {
+		metrics.put(name, metric);
+		return metric;
+	}
+
+	/** @return All metrics in Prometheus text format. */
+	public String scrape() {
+		List<Metric> snapshot;
+		synchronized (metrics) {
+			snapshot = new ArrayList<>(metrics.values());
+		}
+		StringBuilder sb = new StringBuilder(4096);
+		for (Metric metric : snapshot) {
+			metric.writeTo(sb);
+		}
+		return sb.toString();
+	}
+
+	private static void header(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/** Writes a sample line, labelled either by a preformatted label string, or by a single label name and value. */
+	private static void sample(StringBuilder sb, String name, String label, String labelValue, double value) {
+		sb.append(name);
+		if (label != null) {
+			sb.append('{').append(label);
+			if (labelValue != null) {
+				sb.append("=\"").append(escape(labelValue)).append('"');
+			}
+			sb.append('}');
+		}
+		sb.append(' ');
+		if (value == Math.rint(value) && ! Double.isInfinite(value)) {
+			sb.append((long) value);
+		}
+		else {
+			sb.append(value);
+		}
+		sb.append('\n');
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
\ No newline at end of file
@@ -331,6 +331,7 @@ public class MimeType {
 	public static final String TEXT_CSS = "text/css";
 	public static final String TEXT_CSV = "text/csv";
 	public static final String TEXT_ECMASCRIPT = "text/ecmascript";
+	public static final String TEXT_EVENT_STREAM = "text/event-stream";
 	public static final String TEXT_HTML = "text/html";
 	public static final String TEXT_JAVASCRIPT = "text/javascript";
 	public static final String TEXT_MCF = "text/mcf";
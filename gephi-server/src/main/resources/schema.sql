@@ -7,6 +7,7 @@ CREATE TABLE IF NOT EXISTS gephi.graph (
 	up_weight FLOAT NOT NULL DEFAULT 0,
 	down_weight FLOAT NOT NULL DEFAULT 0,
 	url_base VARCHAR(50) DEFAULT NULL,
+	version BIGINT NOT NULL DEFAULT 0,
 	CONSTRAINT pk_graph PRIMARY KEY (pk_id)
 );
 CREATE TABLE IF NOT EXISTS gephi.node (
@@ -27,4 +28,46 @@ CREATE TABLE IF NOT EXISTS gephi.edge (
 	CONSTRAINT fk_edge_graph FOREIGN KEY (pk_graph) REFERENCES gephi.graph (pk_id),
 	CONSTRAINT fk_source_node FOREIGN KEY (pk_graph, source_node) REFERENCES gephi.node (pk_graph, pk_num),
 	CONSTRAINT fk_target_node FOREIGN KEY (pk_graph, target_node) REFERENCES gephi.node (pk_graph, pk_num)
-);
\ No newline at end of file
+);
+-- Schemas created before graph versions gain the column here, as the server does at startup
+ALTER TABLE gephi.graph ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+-- Every statement changing node or edge rows increments the version of each graph whose rows it changed (PostgreSQL 10+)
+CREATE OR REPLACE FUNCTION gephi.bump_graph_version() RETURNS TRIGGER AS $$
+BEGIN
+	IF TG_OP = 'INSERT' THEN
+		UPDATE gephi.graph SET version = version + 1 WHERE pk_id IN (SELECT pk_graph FROM new_rows);
+	ELSIF TG_OP = 'DELETE' THEN
+		UPDATE gephi.graph SET version = version + 1 WHERE pk_id IN (SELECT pk_graph FROM old_rows);
+	ELSE
+		UPDATE gephi.graph SET version = version + 1
+			WHERE pk_id IN (SELECT pk_graph FROM new_rows UNION SELECT pk_graph FROM old_rows);
+	END IF;
+	RETURN NULL;
+END $$ LANGUAGE plpgsql;
+-- Any other update of a graph row increments its version too
+CREATE OR REPLACE FUNCTION gephi.bump_graph_row_version() RETURNS TRIGGER AS $$
+BEGIN
+	NEW.version := OLD.version + 1;
+	RETURN NEW;
+END $$ LANGUAGE plpgsql;
+DROP TRIGGER IF EXISTS node_version_insert ON gephi.node;
+CREATE TRIGGER node_version_insert AFTER INSERT ON gephi.node
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS node_version_update ON gephi.node;
+CREATE TRIGGER node_version_update AFTER UPDATE ON gephi.node
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS node_version_delete ON gephi.node;
+CREATE TRIGGER node_version_delete AFTER DELETE ON gephi.node
+	REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS edge_version_insert ON gephi.edge;
+CREATE TRIGGER edge_version_insert AFTER INSERT ON gephi.edge
+	REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS edge_version_update ON gephi.edge;
+CREATE TRIGGER edge_version_update AFTER UPDATE ON gephi.edge
+	REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS edge_version_delete ON gephi.edge;
+CREATE TRIGGER edge_version_delete AFTER DELETE ON gephi.edge
+	REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE gephi.bump_graph_version();
+DROP TRIGGER IF EXISTS graph_version ON gephi.graph;
+CREATE TRIGGER graph_version BEFORE UPDATE ON gephi.graph
+	FOR EACH ROW WHEN (NEW.version = OLD.version) EXECUTE PROCEDURE gephi.bump_graph_row_version();
\ No newline at end of file
@@ -0,0 +1,185 @@
+package org.nunn.gephiserver.server.graphing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes snapshots to a {@link GraphStore} and checks every column reads back as written.
+ *
+ * @author Rob
+ */
+public class GraphStoreTest {
+
+	private static final Integer GRAPH_ID = 42;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		store = new GraphStore(folder.newFolder("graphs").toPath());
+	}
+
+	@Test
+	public void roundTripsNullTitlesAndTags() throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder("7", graphRow("Nulls"));
+		builder.push(1, null, null);
+		builder.push(2, "two", null);
+		builder.push(3, null, "tag");
+		builder.push(4, "two", "tag");
+		builder.push(1, 2, 3, 0.5f);
+		GraphSnapshot snapshot = builder.build();
+
+		GraphSnapshot read = writeAndRead(snapshot);
+
+		assertColumnsEqual(snapshot, read);
+		assertNull(read.getNodeTitle(0));
+		assertNull(read.getNodeTag(0));
+		assertEquals(-1, read.getNodeTagCode(1));
+		assertEquals("two", read.getNodeTitle(3));
+		assertEquals("tag", read.getNodeTag(3));
+	}
+
+	@Test
+	public void roundTripsMultiByteDictionaries() throws IOException {
+		// 1 + 2 + 9 + 3 bytes of titles, 2 + 4 + 1 bytes of tags: neither a multiple of 4, so both dictionaries are padded
+		String[] titles = {"a", "é", "日本語", "€"};
+		String[] tags = {"ß", "\uD83D\uDE00", "z"};
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder("8", graphRow("Ünïcödé"));
+		for (int i = 0; i < titles.length; i++) {
+			builder.push(i + 1, titles[i], tags[i % tags.length]);
+		}
+		builder.push(10, 1, 4, 1.25f);
+		builder.push(11, 4, 1, -2f);
+		GraphSnapshot snapshot = builder.build();
+		assertTrue(utf8Length(snapshot.titleDictionary) % 4 != 0);
+		assertTrue(utf8Length(snapshot.tagDictionary) % 4 != 0);
+
+		GraphSnapshot read = writeAndRead(snapshot);
+
+		assertColumnsEqual(snapshot, read);
+		for (int i = 0; i < titles.length; i++) {
+			assertEquals(titles[i], read.getNodeTitle(i));
+			assertEquals(tags[i % tags.length], read.getNodeTag(i));
+		}
+		assertEquals("Ünïcödé", read.getGraph().get("title"));
+	}
+
+	@Test
+	public void roundTripsZeroEdges() throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder("9", graphRow("No edges"));
+		builder.push(1, "one", "tag");
+		GraphSnapshot snapshot = builder.build();
+
+		GraphSnapshot read = writeAndRead(snapshot);
+
+		assertColumnsEqual(snapshot, read);
+		assertEquals(1, read.getNodeCount());
+		assertEquals(0, read.getEdgeCount());
+	}
+
+	@Test
+	public void roundTripsEmptyGraph() throws IOException {
+		GraphSnapshot snapshot = new GraphSnapshot.Builder("0", Collections.<String, Object> emptyMap()).build();
+
+		GraphSnapshot read = writeAndRead(snapshot);
+
+		assertColumnsEqual(snapshot, read);
+		assertEquals(0, read.getNodeCount());
+		assertEquals(0, read.getTagCount());
+	}
+
+	@Test
+	public void roundTripsUnresolvedEndpoints() throws IOException {
+		GraphSnapshot.Builder builder = new GraphSnapshot.Builder("10", graphRow("Dangling"));
+		builder.push(5, "five", null);
+		builder.push(3, "three", null);
+		builder.push(1, 5, 3, 1f);
+		builder.push(2, 5, 99, 1f);
+		builder.push(3, 98, 3, 1f);
+		builder.push(4, 97, 96, 1f);
+		GraphSnapshot snapshot = builder.build();
+		assertArrayEquals(new int[] {0, 0, -1, -1}, snapshot.edgeSourceIndexes);
+		assertArrayEquals(new int[] {1, -1, 1, -1}, snapshot.edgeTargetIndexes);
+
+		GraphSnapshot read = writeAndRead(snapshot);
+
+		assertColumnsEqual(snapshot, read);
+	}
+
+	@Test
+	public void readsVersionFromHeader() throws IOException {
+		assertFalse(store.contains(GRAPH_ID));
+		store.write(GRAPH_ID, new GraphSnapshot.Builder("11", graphRow("First")).build());
+		assertTrue(store.contains(GRAPH_ID));
+		assertEquals("11", store.readVersion(GRAPH_ID));
+
+		store.write(GRAPH_ID, new GraphSnapshot.Builder("12", graphRow("Second")).build());
+		assertEquals("12", store.readVersion(GRAPH_ID));
+		assertEquals("12", store.read(GRAPH_ID).getVersion());
+		assertEquals(Collections.singletonMap(GRAPH_ID, "Second"), store.listGraphs());
+	}
+
+	private GraphSnapshot writeAndRead(GraphSnapshot snapshot) throws IOException {
+		store.write(GRAPH_ID, snapshot);
+		assertEquals(snapshot.getVersion(), store.readVersion(GRAPH_ID));
+		return store.read(GRAPH_ID);
+	}
+
+	/** Graph row with a value of each type the JDBC driver gives, and a null. */
+	private static Map<String, Object> graphRow(String title) {
+		Map<String, Object> graph = new HashMap<>();
+		graph.put("title", title);
+		graph.put("pk_id", GRAPH_ID);
+		graph.put("version", 3L);
+		graph.put("scale", 1.5f);
+		graph.put("weight", 2.5d);
+		graph.put("kind", (short) 2);
+		graph.put("directed", true);
+		graph.put("description", null);
+		return graph;
+	}
+
+	private static int utf8Length(String[] values) {
+		int length = 0;
+		for (String value : values) {
+			length += value.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return length;
+	}
+
+	private static void assertColumnsEqual(GraphSnapshot expected, GraphSnapshot actual) {
+		assertEquals(expected.version, actual.version);
+		assertEquals(expected.graph, actual.graph);
+		assertEquals(expected.nodeCount, actual.nodeCount);
+		assertArrayEquals(expected.nodeNums, actual.nodeNums);
+		assertArrayEquals(expected.nodeTitles, actual.nodeTitles);
+		assertArrayEquals(expected.nodeTags, actual.nodeTags);
+		assertArrayEquals(expected.titleDictionary, actual.titleDictionary);
+		assertArrayEquals(expected.tagDictionary, actual.tagDictionary);
+		assertEquals(expected.edgeCount, actual.edgeCount);
+		assertArrayEquals(expected.edgeNums, actual.edgeNums);
+		assertArrayEquals(expected.edgeSources, actual.edgeSources);
+		assertArrayEquals(expected.edgeTargets, actual.edgeTargets);
+		assertArrayEquals(expected.edgeVals, actual.edgeVals, 0f);
+		assertArrayEquals(expected.edgeSourceIndexes, actual.edgeSourceIndexes);
+		assertArrayEquals(expected.edgeTargetIndexes, actual.edgeTargetIndexes);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package org.nunn.gephiserver.server.graphing.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link SampledBetweenness}: exact mode against betweenness worked by hand with Brandes' definition, counting each
+ * ordered pair of other nodes by the share of its shortest paths through the node, and sampled mode against exact mode.
+ *
+ * @author Rob
+ */
+public class SampledBetweennessTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void path() {
+		// 0 -> 1 -> 2 -> 3: 1 is between 0 and 2, 3; 2 is between 0, 1 and 3
+		assertArrayEquals(new double[] {0, 2, 2, 0}, exact(4, 0, 1, 1, 2, 2, 3), DELTA);
+	}
+
+	@Test
+	public void pathIsDirected() {
+		// 0 -> 1 <- 2: no path runs through 1
+		assertArrayEquals(new double[] {0, 0, 0}, exact(3, 0, 1, 2, 1), DELTA);
+	}
+
+	@Test
+	public void outStar() {
+		// Centre 0 points at every leaf: no path runs through it
+		assertArrayEquals(new double[] {0, 0, 0, 0}, exact(4, 0, 1, 0, 2, 0, 3), DELTA);
+	}
+
+	@Test
+	public void twoWayStar() {
+		// Centre 0 and three leaves, linked both ways: the centre is on every path between the 3 * 2 ordered pairs of leaves
+		assertArrayEquals(new double[] {6, 0, 0, 0}, exact(4, 0, 1, 1, 0, 0, 2, 2, 0, 0, 3, 3, 0), DELTA);
+	}
+
+	@Test
+	public void throughStar() {
+		// 1, 2 -> 0 -> 3, 4: the centre is on the paths from each of 2 sources to each of 2 sinks
+		assertArrayEquals(new double[] {4, 0, 0, 0, 0}, exact(5, 1, 0, 2, 0, 0, 3, 0, 4), DELTA);
+	}
+
+	@Test
+	public void diamondSplitsPaths() {
+		// 0 -> 1, 2 -> 3: two shortest paths from 0 to 3, so 1 and 2 each have half of that pair
+		assertArrayEquals(new double[] {0, 0.5, 0.5, 0}, exact(4, 0, 1, 0, 2, 1, 3, 2, 3), DELTA);
+	}
+
+	@Test
+	public void twoComponents() {
+		// 0 -> 1 -> 2 and 3 -> 4 -> 5 -> 3: no paths between the components, each node of the cycle is on the one pair it separates
+		assertArrayEquals(new double[] {0, 1, 0, 1, 1, 1}, exact(6, 0, 1, 1, 2, 3, 4, 4, 5, 5, 3), DELTA);
+	}
+
+	@Test
+	public void emptyAndSingleNode() {
+		assertArrayEquals(new double[0], exact(0), DELTA);
+		assertArrayEquals(new double[] {0}, exact(1), DELTA);
+	}
+
+	@Test
+	public void sampledWithinErrorBound() {
+		int nodeCount = 2000;
+		double error = 0.1d;
+		Random random = new Random(42);
+		int[] edges = new int[nodeCount * 6 * 2];
+		for (int e = 0; e < edges.length; e += 2) {
+			edges[e] = random.nextInt(nodeCount);
+			edges[e + 1] = (edges[e] + 1 + random.nextInt(nodeCount - 1)) % nodeCount;
+		}
+		SampledBetweenness betweenness = betweenness(nodeCount, edges);
+		int samples = betweenness.sampleSize(error);
+		assertTrue("sampled, not exact", samples < nodeCount);
+
+		double[] exact = betweenness.compute(nodeCount);
+		double[] sampled = betweenness.compute(samples);
+		double pairs = (double) nodeCount * (nodeCount - 1);
+		double total = 0d;
+		for (int i = 0; i < nodeCount; i++) {
+			assertEquals("node " + i, exact[i] / pairs, sampled[i] / pairs, error);
+			total += exact[i];
+		}
+		assertTrue("paths run through nodes", total > 0d);
+	}
+
+	@Test
+	public void smallGraphsAreExact() {
+		SampledBetweenness betweenness = betweenness(4, 0, 1, 1, 2, 2, 3);
+		assertEquals(4, betweenness.sampleSize(0.05d));
+	}
+
+	/** @param edges Source and target node index of each edge, in turn. */
+	private static double[] exact(int nodeCount, int... edges) {
+		return betweenness(nodeCount, edges).compute(nodeCount);
+	}
+
+	private static SampledBetweenness betweenness(int nodeCount, int... edges) {
+		int[] sources = new int[edges.length / 2];
+		int[] targets = new int[edges.length / 2];
+		float[] weights = new float[edges.length / 2];
+		for (int e = 0; e < sources.length; e++) {
+			sources[e] = edges[2 * e];
+			targets[e] = edges[2 * e + 1];
+			weights[e] = 1f;
+		}
+		return new SampledBetweenness(new GraphArrays(nodeCount, sources, targets, weights));
+	}
+
+}
\ No newline at end of file
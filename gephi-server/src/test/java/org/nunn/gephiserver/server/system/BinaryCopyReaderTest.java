@@ -0,0 +1,236 @@
+package org.nunn.gephiserver.server.system;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link BinaryCopyReader} against hand-built binary COPY data.
+ *
+ * @author Rob
+ */
+public class BinaryCopyReaderTest {
+
+	@Test
+	public void readsHeaderWithExtension() throws IOException {
+		Copy copy = new Copy(1, 2, 3, 4, 5);
+		copy.row(3).int4(7).float4(1.5f).text("a");
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertTrue(reader.nextRow());
+			assertEquals(7, reader.readInt());
+			assertEquals(1.5f, reader.readFloat(), 0f);
+			assertEquals("a", reader.readString());
+			assertFalse(reader.nextRow());
+		}
+	}
+
+	@Test
+	public void readsNullFields() throws IOException {
+		Copy copy = new Copy();
+		copy.row(3).nul().nul().nul();
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertTrue(reader.nextRow());
+			assertEquals(0, reader.readInt());
+			assertEquals(0f, reader.readFloat(), 0f);
+			assertNull(reader.readString());
+			assertFalse(reader.nextRow());
+		}
+	}
+
+	@Test
+	public void readsMultiByteAndLongText() throws IOException {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'é');
+		String longText = new String(chars);
+		Copy copy = new Copy();
+		copy.row(3).text("über 日本").text(longText).text("");
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertTrue(reader.nextRow());
+			assertEquals("über 日本", reader.readString());
+			assertEquals(longText, reader.readString());
+			assertEquals("", reader.readString());
+			assertFalse(reader.nextRow());
+		}
+	}
+
+	@Test
+	public void skipsUnreadFields() throws IOException {
+		Copy copy = new Copy();
+		copy.row(4).int4(1).text("skipped").nul().float4(2f);
+		copy.row(2).int4(2).text("read");
+		copy.row(1).int4(3);
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertTrue(reader.nextRow());
+			assertEquals(1, reader.readInt());
+			assertTrue(reader.nextRow());
+			assertEquals(2, reader.readInt());
+			assertEquals("read", reader.readString());
+			assertTrue(reader.nextRow());
+			assertFalse(reader.nextRow());
+		}
+	}
+
+	@Test
+	public void stopsAtTrailer() throws IOException {
+		Copy copy = new Copy();
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertFalse(reader.nextRow());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherData() throws IOException {
+		new BinaryCopyReader(new ByteArrayInputStream("PGCOPY\n-----------".getBytes(StandardCharsets.US_ASCII))).close();
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsReadPastRow() throws IOException {
+		Copy copy = new Copy();
+		copy.row(1).int4(1);
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			reader.nextRow();
+			reader.readInt();
+			reader.readInt();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsWrongFieldLength() throws IOException {
+		Copy copy = new Copy();
+		copy.row(1).text("12345678");
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			reader.nextRow();
+			reader.readInt();
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsTruncatedHeader() throws IOException {
+		Copy copy = new Copy(1, 2, 3, 4, 5);
+		copy.truncated(copy.size() - 2).close();
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsTruncatedField() throws IOException {
+		Copy copy = new Copy();
+		copy.row(2).int4(1).text("cut short");
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.truncated(copy.size() - 4)) {
+			assertTrue(reader.nextRow());
+			assertEquals(1, reader.readInt());
+			reader.readString();
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsTruncatedSkippedField() throws IOException {
+		Copy copy = new Copy();
+		copy.row(1).text("cut short");
+		copy.trailer();
+
+		try (BinaryCopyReader reader = copy.truncated(copy.size() - 4)) {
+			assertTrue(reader.nextRow());
+			reader.nextRow();
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsMissingTrailer() throws IOException {
+		Copy copy = new Copy();
+		copy.row(1).int4(1);
+
+		try (BinaryCopyReader reader = copy.reader()) {
+			assertTrue(reader.nextRow());
+			reader.nextRow();
+		}
+	}
+
+	/** Writes binary COPY data as PostgreSQL sends it: header, rows of length prefixed fields, trailer. */
+	private static final class Copy {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		Copy(int... extension) throws IOException {
+			out.write(new byte[] {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0});
+			out.writeInt(0);
+			out.writeInt(extension.length);
+			for (int b : extension) {
+				out.writeByte(b);
+			}
+		}
+
+		Copy row(int fields) throws IOException {
+			out.writeShort(fields);
+			return this;
+		}
+
+		Copy int4(int value) throws IOException {
+			out.writeInt(4);
+			out.writeInt(value);
+			return this;
+		}
+
+		Copy float4(float value) throws IOException {
+			out.writeInt(4);
+			out.writeFloat(value);
+			return this;
+		}
+
+		Copy text(String value) throws IOException {
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+			return this;
+		}
+
+		Copy nul() throws IOException {
+			out.writeInt(-1);
+			return this;
+		}
+
+		void trailer() throws IOException {
+			out.writeShort(-1);
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		BinaryCopyReader reader() throws IOException {
+			return truncated(size());
+		}
+
+		BinaryCopyReader truncated(int length) throws IOException {
+			return new BinaryCopyReader(new ByteArrayInputStream(Arrays.copyOf(bytes.toByteArray(), length)));
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -43,32 +43,44 @@ $(window).on('load', function() {
 			$graph.fadeOut();
 		}
 	};
-	var pollAsyncResult = function(asyncUuid, timeout) {
-		setTimeout(function() {
-			$.ajax({
-				url: '/gephi-server/rest/graph/getSvgAsyncResult'
-				, method: 'POST'
-				, data: {uuid: asyncUuid}
-				, headers: {Accept: 'application/svg+xml'}
-			})
-			.done(function(data, textStatus, jqXHR) {
-				if (data) {
-					var svg = $(data).children('svg').get(0);
-					$(svg).removeAttr('width').removeAttr('height');
-					$graph.empty().append(svg);
-					svgPanZoomCreate(svg);
-				}
-				else if (timeout < 64000) {
-					pollAsyncResult(asyncUuid, timeout * 2);
-				}
-				else {
-					$graph.text('Timed out');
-				}
-			})
-			.fail(function(jqXHR, textStatus, errorThrown) {
-				$graph.text('Failed');
-			});
-		}, timeout);
+	var showSvg = function(data) {
+		var svg = $(data).children('svg').get(0);
+		$(svg).removeAttr('width').removeAttr('height');
+		$graph.empty().append(svg);
+		svgPanZoomCreate(svg);
+	};
+	var awaitAsyncResult = function(asyncUuid, attempts) {
+		$.ajax({
+			url: '/gephi-server/rest/graph/awaitSvgAsyncResult'
+			, method: 'POST'
+			, data: {uuid: asyncUuid, waitMillis: 30000}
+			, headers: {Accept: 'application/svg+xml'}
+		})
+		.done(function(data, textStatus, jqXHR) {
+			if (data) {
+				showSvg(data);
+			}
+			else if (attempts > 1) {
+				awaitAsyncResult(asyncUuid, attempts - 1);
+			}
+			else {
+				$graph.text('Timed out');
+			}
+		})
+		.fail(function(jqXHR, textStatus, errorThrown) {
+			$graph.text('Failed');
+		});
+	};
+	var followAsyncEvents = function(asyncUuid) {
+		if ( ! ("EventSource" in window)) {
+			return;
+		}
+		var events = new EventSource('/gephi-server/rest/graph/asyncEvents?uuid=' + encodeURIComponent(asyncUuid));
+		events.addEventListener('queued', function() { $graph.text('Queued'); });
+		events.addEventListener('started', function() { $graph.text('Started'); });
+		events.addEventListener('stage', function(e) { $graph.text('Running: ' + e.data); });
+		events.addEventListener('done', function() { events.close(); });
+		events.onerror = function() { events.close(); };
 	};
 	$('form').on('submit', function() {
 		svgPanZoomDestroy(getSvg());
@@ -78,17 +90,15 @@ $(window).on('load', function() {
 		if (async) {
 			url += 'stdSvgAsync';
 			var fncDone = function(data, textStatus, jqXHR) {
-				pollAsyncResult(data, 1000);
+				followAsyncEvents(data);
+				awaitAsyncResult(data, 4);
 			};
 		}
 		else {
 			url += 'stdSvg';
 			var fncDone = function(data, textStatus, jqXHR) {
 				if (data) {
-					var svg = $(data).children('svg').get(0);
-					$(svg).removeAttr('width').removeAttr('height');
-					$graph.empty().append(svg);
-					svgPanZoomCreate(svg);
+					showSvg(data);
 				}
 				else {
 					$graph.text('Failed');